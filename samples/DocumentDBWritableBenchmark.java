@@ -0,0 +1,91 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+import com.microsoft.azure.documentdb.Document;
+import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
+
+// Compares the size and the round trip time of DocumentDBWritable with documents written as JSON text
+public class DocumentDBWritableBenchmark {
+    private static final int DOCUMENTS = 1000;
+    private static final int ITERATIONS = 20;
+
+    // The documents as JSON text, written with writeUTF
+    public static class JsonTextWritable implements Writable {
+        private Document doc;
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(this.doc.toString());
+        }
+
+        public void readFields(DataInput in) throws IOException {
+            this.doc = new Document(in.readUTF());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        Document[] docs = new Document[DOCUMENTS];
+        for (int i = 0; i < DOCUMENTS; i++) {
+            docs[i] = createDocument(random, i);
+        }
+
+        DocumentDBWritable binary = new DocumentDBWritable();
+        JsonTextWritable text = new JsonTextWritable();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            boolean warmup = iteration < ITERATIONS / 2;
+            run("JSON text", docs, text, new JsonTextWritable(), warmup);
+            run("DocumentDBWritable", docs, binary, new DocumentDBWritable(), warmup);
+        }
+    }
+
+    private static Document createDocument(Random random, int i) {
+        Document doc = new Document();
+        doc.setId("document-" + i);
+        doc.set("timestamp", 1450000000L + random.nextInt(1000000));
+        doc.set("temperature", random.nextDouble() * 40);
+        doc.set("active", random.nextBoolean());
+        doc.set("city", "Seattle");
+        for (int j = 0; j < 10; j++) {
+            Document reading = new Document();
+            reading.set("sensor", "sensor-" + random.nextInt(100));
+            reading.set("value", random.nextInt(10000));
+            reading.set("unit", "celsius");
+            doc.set("reading" + j, reading);
+        }
+
+        return doc;
+    }
+
+    private static void run(String name, Document[] docs, Writable writer, Writable reader, boolean warmup)
+            throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        DataInputBuffer in = new DataInputBuffer();
+        long start = System.nanoTime();
+        for (Document doc : docs) {
+            if (writer instanceof DocumentDBWritable) {
+                ((DocumentDBWritable) writer).setDoc(doc);
+            } else {
+                ((JsonTextWritable) writer).doc = doc;
+            }
+
+            writer.write(out);
+        }
+
+        in.reset(out.getData(), out.getLength());
+        for (int i = 0; i < docs.length; i++) {
+            reader.readFields(in);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (!warmup) {
+            System.out.println(String.format("%-20s %8d bytes/document %10d ns/round trip", name,
+                    out.getLength() / docs.length, elapsed / docs.length));
+        }
+    }
+}
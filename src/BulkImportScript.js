@@ -2,89 +2,105 @@
 // Copyright (c) Microsoft Corporation.  All rights reserved.
 //------------------------------------------------------------
 
-function bulkImport(docs, upsert) {
+function bulkImport(docs, upsert, continueOnError) {
     var collection = getContext().getCollection();
     var collectionLink = collection.getSelfLink();
 
-    // The count of imported docs, also used as current doc index.
+    // The count of processed docs, also used as current doc index.
     var count = 0;
-    var errorCodes = { CONFLICT: 409 };
-    
+
+    // The documents that failed to be written when continueOnError is set.
+    var failed = [];
+
     // Validate input.
     if (!docs) throw new Error("The array is undefined or null.");
 
     var docsLength = docs.length;
     if (docsLength == 0) {
-        getContext().getResponse().setBody(0);
-         return;
+        setResponse();
+        return;
     }
 
-    // Call the create API to create a document.
-    tryCreate(docs[count], callback);
-    
+    // Call the create or upsert API to write a document.
+    tryWrite(docs[count], callback);
+
     // Note that there are 2 exit conditions:
-    // 1) The createDocument request was not accepted.
+    // 1) The write request was not accepted.
     // In this case the callback will not be called, we just call
-    // setBody and we are done.
+    // setResponse and we are done.
     // 2) The callback was called docs.length times.
-    // In this case all documents were created and we don’t need to call
-    // tryCreate anymore. Just call setBody and we are done.
-    function tryCreate(doc, callback) {
-        var isAccepted = collection.createDocument(collectionLink, doc, { disableAutomaticIdGeneration : true}, callback);
+    // In this case all documents were processed and we don’t need to call
+    // tryWrite anymore. Just call setResponse and we are done.
+    function tryWrite(rawDoc, callback) {
+        // The documents are passed as JSON strings.
+        var doc = typeof rawDoc === "string" ? JSON.parse(rawDoc) : rawDoc;
+
+        // Documents tagged by a transactional output committer are merged with the document of the same task.
+        if (doc._hadoopTask !== undefined) {
+            tryMerge(doc, callback);
+            return;
+        }
+
+        tryWriteDocument(doc, upsert, callback);
+    }
+
+    function tryWriteDocument(doc, replace, callback) {
+        var options = { disableAutomaticIdGeneration : true };
+        var isAccepted = replace
+            ? collection.upsertDocument(collectionLink, doc, options, callback)
+            : collection.createDocument(collectionLink, doc, options, callback);
 
         // If the request was accepted, callback will be called.
         // Otherwise report current count back to the client,
         // which will call the script again with remaining set of docs.
-        if (!isAccepted) getContext().getResponse().setBody(count); 
+        if (!isAccepted) setResponse();
     }
-            
-    // To replace the document, first issue a query to find it and then call replace.
-    function tryReplace(doc, callback) {
-        var parsedDoc = JSON.parse(doc);
-        retrieveDoc(parsedDoc, null, function(retrievedDocs){
-            var isAccepted = collection.replaceDocument(retrievedDocs[0]._self, parsedDoc, callback);
-            if (!isAccepted) getContext().getResponse().setBody(count);
-        });
-    }
-    
-    function retrieveDoc(doc, continuation, callback) {
-        var query = "select * from root r where r.id = '" + doc.id + "'";
-        var requestOptions = { continuation : continuation }; 
-        var isAccepted = collection.queryDocuments(collectionLink, query, requestOptions, function(err, retrievedDocs, responseOptions) {
-            if (err) throw err;
-            
-            if (retrievedDocs.length > 0) {
-                callback(retrievedDocs);
-            } else if (responseOptions.continuation) {
-                retrieveDoc(doc, responseOptions.continuation, callback);            
-            } else {
-                throw "Error in retrieving document: " + doc.id;
+
+    // A document already written by another attempt of the same task is replaced, and keeps the attempts that wrote
+    // it, so that aborting one of the attempts doesn't remove the document of the other.
+    function tryMerge(doc, callback) {
+        var documentLink = collection.getAltLink() + "/docs/" + doc.id;
+        var isAccepted = collection.readDocument(documentLink, {}, function (err, existing) {
+            if (err && err.number != 404) {
+                callback(err);
+                return;
             }
+
+            var replace = upsert;
+            if (!err && existing._hadoopTask === doc._hadoopTask && existing._hadoopAttempts) {
+                existing._hadoopAttempts.forEach(function (attempt) {
+                    if (doc._hadoopAttempts.indexOf(attempt) < 0) doc._hadoopAttempts.push(attempt);
+                });
+                replace = true;
+            }
+
+            tryWriteDocument(doc, replace, callback);
         });
-        
-        if (!isAccepted) getContext().getResponse().setBody(count); 
+
+        if (!isAccepted) setResponse();
+    }
+
+    // The response reports the number of documents processed, written or failed, and the failed documents.
+    function setResponse() {
+        getContext().getResponse().setBody({ count: count, failed: failed });
     }
 
-    // This is called when collection.createDocument is done in order to
-    // process the result.
+    // This is called when the write is done in order to process the result.
     function callback(err, doc, options) {
         if (err) {
-            // Replace the document if status code is 409 and upsert is enabled
-            if(upsert && err.number == errorCodes.CONFLICT) {
-                return tryReplace(docs[count], callback);
-            } else {
-                throw err;
-            }
+            if (!continueOnError) throw err;
+
+            failed.push({ index: count, code: err.number, message: err.message });
         }
-        
-           // One more document has been inserted, increment the count.
-          count++;
-          if (count >= docsLength) {
-            // If we created all documents, we are done. Just set the response.
-            getContext().getResponse().setBody(count); 
-          } else {
-            // Create next document.
-            tryCreate(docs[count], callback);
-          } 
-    } 
- }
+
+        // One more document has been processed, increment the count.
+        count++;
+        if (count >= docsLength) {
+            // If we processed all documents, we are done. Just set the response.
+            setResponse();
+        } else {
+            // Write next document.
+            tryWrite(docs[count], callback);
+        }
+    }
+}
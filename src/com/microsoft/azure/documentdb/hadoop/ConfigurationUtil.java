@@ -63,8 +63,182 @@ public class ConfigurationUtil {
      */
     public static final String UPSERT = "DocumentDB.upsert";
 
+    /**
+     * The minimum number of splits created for each input collection, 1 by default. When a collection has fewer
+     * partition key ranges, each range is cut into sub-ranges on the split field.
+     */
+    public static final String SPLITS_PER_COLLECTION = "DocumentDB.splitsPerCollection";
+
+    /**
+     * The numeric document property used to cut a partition key range into sub-ranges, _ts by default.
+     */
+    public static final String SPLIT_FIELD = "DocumentDB.splitField";
+
+    /**
+     * The number of result pages fetched ahead in the background by the record readers, 0 (disabled) by default.
+     */
+    public static final String PREFETCH_PAGES = "DocumentDB.prefetchPages";
+
+    /**
+     * The number of result pages read between two read checkpoints, 0 (disabled) by default.
+     */
+    public static final String CHECKPOINT_INTERVAL = "DocumentDB.checkpointInterval";
+
+    /**
+     * The directory the read checkpoints are saved to, a directory under the job staging directory by default.
+     */
+    public static final String CHECKPOINT_DIR = "DocumentDB.checkpointDir";
+
+    /**
+     * A resume option, false by default. When enabled, a retried map task resumes from the read checkpoint of its
+     * failed attempt instead of reading its split from the beginning. The mapper has to be stateless, since the
+     * records before the checkpoint are not read again.
+     */
+    public static final String RESUME_FROM_CHECKPOINT = "DocumentDB.resumeFromCheckpoint";
+
+    /**
+     * The number of documents requested per result page, 700 by default.
+     */
+    public static final String PAGE_SIZE = "DocumentDB.pageSize";
+
+    /**
+     * An adaptive page size option, false by default. When enabled, the page size of each split is adjusted to the
+     * request charge, size and latency of the pages read.
+     */
+    public static final String ADAPTIVE_PAGE_SIZE = "DocumentDB.adaptivePageSize";
+
+    /**
+     * The request charge per page the adaptive page size aims for, 100 request units by default.
+     */
+    public static final String TARGET_REQUEST_CHARGE = "DocumentDB.targetRequestCharge";
+
+    /**
+     * The size of a page in UTF-8 bytes the adaptive page size aims for, 1MB by default.
+     */
+    public static final String TARGET_PAGE_BYTES = "DocumentDB.targetPageBytes";
+
+    /**
+     * A query pushdown option for Hive tables, false by default. When enabled, the columns of Hive queries, and
+     * their filter with DocumentDB.pushdownTypedColumns, are pushed down to the documentdb query. The names of the
+     * Hive columns, or their mappings, must match the case of the document properties.
+     */
+    public static final String PUSHDOWN = "DocumentDB.pushdown";
+
+    /**
+     * Declares that the documents store the values of the Hive columns with the JSON types of the columns, false by
+     * default: strings for string columns, booleans for boolean columns, and whole numbers in range for integer
+     * columns. The comparisons of Hive filters are only pushed down when it is set, since documentdb doesn't match
+     * values of other types the way Hive converts them.
+     */
+    public static final String PUSHDOWN_TYPED_COLUMNS = "DocumentDB.pushdownTypedColumns";
+
+    /**
+     * The directory of the incremental read watermarks. When set, only the documents modified since the last
+     * successful job are read.
+     */
+    public static final String WATERMARK_DIR = "DocumentDB.watermarkDir";
+
+    /**
+     * The maximum number of batches being written to each output collection at a time, 1 by default.
+     */
+    public static final String MAX_IN_FLIGHT_BATCHES = "DocumentDB.maxInFlightBatches";
+
+    /**
+     * The maximum number of documents in a batch written to an output collection, 100 by default.
+     */
+    public static final String MAX_BATCH_DOCUMENTS = "DocumentDB.maxBatchDocuments";
+
+    /**
+     * The maximum size in bytes of a batch written to an output collection, 1MB by default.
+     */
+    public static final String MAX_BATCH_BYTES = "DocumentDB.maxBatchBytes";
+
+    /**
+     * The maximum number of documents a task can fail to write before it fails, 0 by default. The documents that
+     * failed to be written are skipped.
+     */
+    public static final String MAX_WRITE_ERRORS = "DocumentDB.maxWriteErrors";
+
+    /**
+     * The directory the documents that failed to be written are saved to, with their error.
+     */
+    public static final String DEAD_LETTER_DIR = "DocumentDB.deadLetterDir";
+
+    /**
+     * The request units per second the tasks of a job consume in total, unlimited by default.
+     */
+    public static final String TARGET_RU_PER_SECOND = "DocumentDB.targetRUPerSecond";
+
+    /**
+     * A transactional output option, false by default. When enabled, the documents written by a task attempt are
+     * tagged with the attempt and removed unless the attempt is committed.
+     */
+    public static final String TRANSACTIONAL_OUTPUT = "DocumentDB.transactionalOutput";
+
+    /**
+     * A write-behind option, false by default. When enabled, the batches that can't be written right away are
+     * spilled to a local file and written in the background, instead of blocking the task.
+     */
+    public static final String WRITE_BEHIND = "DocumentDB.writeBehind";
+
+    /**
+     * The local directory of the write-behind spill files, the temporary directory of the task by default.
+     */
+    public static final String SPILL_DIR = "DocumentDB.spillDir";
+
+    /**
+     * The number of documents kept in the coalescing window of a writer, 0 by default. Only the last version of the
+     * documents with the same id and partition key in the window is written.
+     */
+    public static final String COALESCE_WINDOW_DOCUMENTS = "DocumentDB.coalesceWindowDocuments";
+
+    /**
+     * The size in bytes of the serialized documents kept in the coalescing window of a writer, 0 by default.
+     */
+    public static final String COALESCE_WINDOW_BYTES = "DocumentDB.coalesceWindowBytes";
+
+    /**
+     * The comma separated property paths, such as id or customer.name, by which DocumentDBWritable keys are sorted.
+     * The whole documents are compared by default.
+     */
+    public static final String SORT_KEY_FIELDS = "DocumentDB.sortKeyFields";
+
+    /**
+     * The comma separated property paths by which DocumentDBWritable keys are grouped into reduce calls, a prefix of
+     * the sortKeyFields. The keys are grouped by the sortKeyFields by default.
+     */
+    public static final String GROUP_KEY_FIELDS = "DocumentDB.groupKeyFields";
+
+    /**
+     * The output collections and stored procedures provisioned when the job is submitted, set by the output formats.
+     */
+    public static final String PROVISIONED_OUTPUT = "DocumentDB.provisionedOutput";
+
+    /**
+     * The hadoop properties describing the running task attempt and the job.
+     */
+    public static final String TASK_ATTEMPT_ID = "mapreduce.task.attempt.id";
+    public static final String JOB_DIR = "mapreduce.job.dir";
+    public static final String NUM_MAPS = "mapreduce.job.maps";
+    public static final String NUM_REDUCES = "mapreduce.job.reduces";
+    public static final String OUTPUT_FORMAT_CLASS = "mapreduce.job.outputformat.class";
+    public static final String MAPRED_OUTPUT_FORMAT_CLASS = "mapred.output.format.class";
+    public static final String MAPRED_OUTPUT_COMMITTER_CLASS = "mapred.output.committer.class";
+
     public static final int DEFAULT_STRING_PRECISION = -1; // Maxmum precision.
 
+    public static final String DEFAULT_SPLIT_FIELD = "_ts";
+
+    public static final int DEFAULT_PAGE_SIZE = 700;
+
+    public static final int DEFAULT_MAX_BATCH_DOCUMENTS = 100;
+
+    public static final long DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+
+    public static final double DEFAULT_TARGET_REQUEST_CHARGE = 100;
+
+    public static final long DEFAULT_TARGET_PAGE_BYTES = 1024 * 1024;
+
     /**
      * Gets the DocumentDB.db from the Configuration object.
      * @param conf job configuration object
@@ -79,7 +253,14 @@ public class ConfigurationUtil {
      */
     private static final Set<String> ALL_PROPERTIES = ImmutableSet.of(DB_NAME,
             INPUT_COLLECTION_NAMES, OUTPUT_COLLECTION_NAMES, DB_HOST, DB_KEY,
-            QUERY);
+            QUERY, SPLITS_PER_COLLECTION, SPLIT_FIELD, PREFETCH_PAGES, CHECKPOINT_INTERVAL,
+            CHECKPOINT_DIR, RESUME_FROM_CHECKPOINT, PAGE_SIZE, ADAPTIVE_PAGE_SIZE, TARGET_REQUEST_CHARGE,
+            TARGET_PAGE_BYTES,
+            PUSHDOWN, PUSHDOWN_TYPED_COLUMNS, WATERMARK_DIR, MAX_IN_FLIGHT_BATCHES, MAX_BATCH_DOCUMENTS,
+            MAX_BATCH_BYTES,
+            MAX_WRITE_ERRORS, DEAD_LETTER_DIR, TARGET_RU_PER_SECOND,
+            TRANSACTIONAL_OUTPUT, WRITE_BEHIND, SPILL_DIR, COALESCE_WINDOW_DOCUMENTS,
+            COALESCE_WINDOW_BYTES, SORT_KEY_FIELDS, GROUP_KEY_FIELDS);
   
     /**
      * Gets the DocumentDB.inputCollections from the Configuration object.
@@ -175,6 +356,521 @@ public class ConfigurationUtil {
         return (outputCollectionsOffer != null) ? outputCollectionsOffer : "S3";
     }
     
+    /**
+     * Gets the DocumentDB.maxInFlightBatches from the Configuration object.
+     * @param conf job configuration object
+     * @return the maximum number of batches being written to an output collection at a time.
+     */
+    public final static int getMaxInFlightBatches(Configuration conf) {
+        String value = conf.get(MAX_IN_FLIGHT_BATCHES);
+        if (StringUtils.isEmpty(value)) {
+            return 1;
+        }
+
+        int maxInFlightBatches;
+        try {
+            maxInFlightBatches = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("maxInFlightBatches is expected to be an integer.", e);
+        }
+
+        if (maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("maxInFlightBatches can only be a positive number.");
+        }
+
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Gets the DocumentDB.maxBatchDocuments from the Configuration object.
+     * @param conf job configuration object
+     * @return the maximum number of documents in a batch.
+     */
+    public final static int getMaxBatchDocuments(Configuration conf) {
+        String value = conf.get(MAX_BATCH_DOCUMENTS);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_MAX_BATCH_DOCUMENTS;
+        }
+
+        int maxBatchDocuments;
+        try {
+            maxBatchDocuments = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("maxBatchDocuments is expected to be an integer.", e);
+        }
+
+        if (maxBatchDocuments < 1) {
+            throw new IllegalArgumentException("maxBatchDocuments can only be a positive number.");
+        }
+
+        return maxBatchDocuments;
+    }
+
+    /**
+     * Gets the DocumentDB.maxBatchBytes from the Configuration object.
+     * @param conf job configuration object
+     * @return the maximum size in bytes of a batch.
+     */
+    public final static long getMaxBatchBytes(Configuration conf) {
+        String value = conf.get(MAX_BATCH_BYTES);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_MAX_BATCH_BYTES;
+        }
+
+        long maxBatchBytes;
+        try {
+            maxBatchBytes = Long.parseLong(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("maxBatchBytes is expected to be an integer.", e);
+        }
+
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException("maxBatchBytes can only be a positive number.");
+        }
+
+        return maxBatchBytes;
+    }
+
+    /**
+     * Gets the DocumentDB.maxWriteErrors from the Configuration object.
+     * @param conf job configuration object
+     * @return the maximum number of documents a task can fail to write.
+     */
+    public final static long getMaxWriteErrors(Configuration conf) {
+        String value = conf.get(MAX_WRITE_ERRORS);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        long maxWriteErrors;
+        try {
+            maxWriteErrors = Long.parseLong(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("maxWriteErrors is expected to be an integer.", e);
+        }
+
+        if (maxWriteErrors < 0) {
+            throw new IllegalArgumentException("maxWriteErrors can't be a negative number.");
+        }
+
+        return maxWriteErrors;
+    }
+
+    /**
+     * Gets the DocumentDB.deadLetterDir from the Configuration object.
+     * @param conf job configuration object
+     * @return the directory of the documents that failed to be written, or null if they are only logged.
+     */
+    public final static String getDeadLetterDir(Configuration conf) {
+        String deadLetterDir = conf.get(DEAD_LETTER_DIR);
+        return StringUtils.isEmpty(deadLetterDir) ? null : deadLetterDir;
+    }
+
+    /**
+     * Gets the DocumentDB.coalesceWindowDocuments from the Configuration object.
+     * @param conf job configuration object
+     * @return the number of documents in the coalescing window, 0 if it isn't limited by documents.
+     */
+    public final static int getCoalesceWindowDocuments(Configuration conf) {
+        String value = conf.get(COALESCE_WINDOW_DOCUMENTS);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        int coalesceWindowDocuments;
+        try {
+            coalesceWindowDocuments = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("coalesceWindowDocuments is expected to be an integer.", e);
+        }
+
+        if (coalesceWindowDocuments < 0) {
+            throw new IllegalArgumentException("coalesceWindowDocuments can't be a negative number.");
+        }
+
+        return coalesceWindowDocuments;
+    }
+
+    /**
+     * Gets the DocumentDB.coalesceWindowBytes from the Configuration object.
+     * @param conf job configuration object
+     * @return the size of the coalescing window in bytes, 0 if it isn't limited by size.
+     */
+    public final static long getCoalesceWindowBytes(Configuration conf) {
+        String value = conf.get(COALESCE_WINDOW_BYTES);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        long coalesceWindowBytes;
+        try {
+            coalesceWindowBytes = Long.parseLong(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("coalesceWindowBytes is expected to be an integer.", e);
+        }
+
+        if (coalesceWindowBytes < 0) {
+            throw new IllegalArgumentException("coalesceWindowBytes can't be a negative number.");
+        }
+
+        return coalesceWindowBytes;
+    }
+
+    /**
+     * Gets the DocumentDB.splitsPerCollection from the Configuration object.
+     * @param conf job configuration object
+     * @return the minimum number of splits for each input collection.
+     */
+    public final static int getSplitsPerCollection(Configuration conf) {
+        String value = conf.get(SPLITS_PER_COLLECTION);
+        if (StringUtils.isEmpty(value)) {
+            return 1;
+        }
+
+        int splitsPerCollection;
+        try {
+            splitsPerCollection = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("splitsPerCollection is expected to be an integer.", e);
+        }
+
+        if (splitsPerCollection < 1) {
+            throw new IllegalArgumentException("splitsPerCollection can only be a positive number.");
+        }
+
+        return splitsPerCollection;
+    }
+
+    /**
+     * Gets the DocumentDB.splitField from the Configuration object.
+     * @param conf job configuration object
+     * @return the numeric property used to cut partition key ranges into sub-ranges.
+     */
+    public final static String getSplitField(Configuration conf) {
+        String splitField = conf.get(SPLIT_FIELD);
+        return StringUtils.isEmpty(splitField) ? DEFAULT_SPLIT_FIELD : splitField;
+    }
+
+    /**
+     * Gets the DocumentDB.prefetchPages from the Configuration object.
+     * @param conf job configuration object
+     * @return the number of pages to fetch ahead in the background.
+     */
+    public final static int getPrefetchPages(Configuration conf) {
+        String value = conf.get(PREFETCH_PAGES);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        int prefetchPages;
+        try {
+            prefetchPages = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("prefetchPages is expected to be an integer.", e);
+        }
+
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages can only be 0 or a positive number.");
+        }
+
+        return prefetchPages;
+    }
+
+    /**
+     * Gets the DocumentDB.checkpointInterval from the Configuration object.
+     * @param conf job configuration object
+     * @return the number of pages read between two read checkpoints, 0 if checkpointing is disabled.
+     */
+    public final static int getCheckpointInterval(Configuration conf) {
+        String value = conf.get(CHECKPOINT_INTERVAL);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        int checkpointInterval;
+        try {
+            checkpointInterval = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("checkpointInterval is expected to be an integer.", e);
+        }
+
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("checkpointInterval can only be 0 or a positive number.");
+        }
+
+        return checkpointInterval;
+    }
+
+    /**
+     * Gets the DocumentDB.checkpointDir from the Configuration object.
+     * @param conf job configuration object
+     * @return the directory of the read checkpoints, or null if it isn't set and the job directory is unknown.
+     */
+    public final static String getCheckpointDir(Configuration conf) {
+        String checkpointDir = conf.get(CHECKPOINT_DIR);
+        if (!StringUtils.isEmpty(checkpointDir)) {
+            return checkpointDir;
+        }
+
+        String jobDir = conf.get(JOB_DIR);
+        return StringUtils.isEmpty(jobDir) ? null : jobDir + "/documentdb-checkpoints";
+    }
+
+    /**
+     * Gets the DocumentDB.watermarkDir from the Configuration object.
+     * @param conf job configuration object
+     * @return the directory of the incremental read watermarks, or null if reads aren't incremental.
+     */
+    public final static String getWatermarkDir(Configuration conf) {
+        String watermarkDir = conf.get(WATERMARK_DIR);
+        return StringUtils.isEmpty(watermarkDir) ? null : watermarkDir;
+    }
+
+    /**
+     * Gets the DocumentDB.resumeFromCheckpoint from the Configuration object.
+     * @param conf job configuration object
+     * @return the value of resumeFromCheckpoint option
+     */
+    public final static boolean getResumeFromCheckpoint(Configuration conf) {
+        String resumeFromCheckpoint = conf.get(RESUME_FROM_CHECKPOINT);
+        return resumeFromCheckpoint != null && resumeFromCheckpoint.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Checks whether a task attempt can resume reading from the checkpoint of a failed attempt. Resuming has to be
+     * enabled with DocumentDB.resumeFromCheckpoint, since only a stateless mapper has emitted everything for the
+     * records it has read. The records read by the failed attempt are only kept when the job is map-only and writes
+     * its output to documentdb, other output is discarded with the failed attempt and the split has to be read from
+     * the beginning. Transactional output also discards the documents written by a failed attempt. The documentdb
+     * writers of the task are flushed before each checkpoint is saved, so the documents buffered by a failed attempt
+     * are never behind its checkpoint.
+     * @param conf job configuration object
+     * @return true if resuming is enabled and the records emitted by a failed attempt survive it.
+     */
+    public final static boolean isResumeSafe(Configuration conf) {
+        if (!getResumeFromCheckpoint(conf) || conf.getInt(NUM_REDUCES, 1) != 0 || getTransactionalOutput(conf)) {
+            return false;
+        }
+
+        String outputFormat = conf.get(OUTPUT_FORMAT_CLASS, conf.get(MAPRED_OUTPUT_FORMAT_CLASS));
+        return outputFormat != null && outputFormat.endsWith(".DocumentDBOutputFormat");
+    }
+
+    /**
+     * Gets the DocumentDB.pageSize from the Configuration object.
+     * @param conf job configuration object
+     * @return the number of documents requested per page.
+     */
+    public final static int getPageSize(Configuration conf) {
+        String value = conf.get(PAGE_SIZE);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        int pageSize;
+        try {
+            pageSize = Integer.parseInt(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("pageSize is expected to be an integer.", e);
+        }
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize can only be a positive number.");
+        }
+
+        return pageSize;
+    }
+
+    /**
+     * Gets the DocumentDB.adaptivePageSize from the Configuration object.
+     * @param conf job configuration object
+     * @return the value of adaptivePageSize option
+     */
+    public final static boolean getAdaptivePageSize(Configuration conf) {
+        String adaptivePageSize = conf.get(ADAPTIVE_PAGE_SIZE);
+        return adaptivePageSize != null && adaptivePageSize.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Gets the DocumentDB.transactionalOutput from the Configuration object.
+     * @param conf job configuration object
+     * @return the value of transactionalOutput option
+     */
+    public final static boolean getTransactionalOutput(Configuration conf) {
+        String transactionalOutput = conf.get(TRANSACTIONAL_OUTPUT);
+        return transactionalOutput != null && transactionalOutput.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Gets the DocumentDB.writeBehind from the Configuration object.
+     * @param conf job configuration object
+     * @return the value of writeBehind option
+     */
+    public final static boolean getWriteBehind(Configuration conf) {
+        String writeBehind = conf.get(WRITE_BEHIND);
+        return writeBehind != null && writeBehind.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Gets the DocumentDB.spillDir from the Configuration object.
+     * @param conf job configuration object
+     * @return the local directory of the spill files.
+     */
+    public final static String getSpillDir(Configuration conf) {
+        String spillDir = conf.get(SPILL_DIR);
+        return StringUtils.isEmpty(spillDir) ? System.getProperty("java.io.tmpdir") : spillDir;
+    }
+
+    /**
+     * Gets the DocumentDB.sortKeyFields from the Configuration object.
+     * @param conf job configuration object
+     * @return the property paths of the sort key, or null if whole documents are compared.
+     */
+    public final static String[] getSortKeyFields(Configuration conf) {
+        return getKeyFields(conf.get(SORT_KEY_FIELDS));
+    }
+
+    /**
+     * Gets the DocumentDB.groupKeyFields from the Configuration object.
+     * @param conf job configuration object
+     * @return the property paths of the grouping key, the sortKeyFields if it isn't set.
+     */
+    public final static String[] getGroupKeyFields(Configuration conf) {
+        String[] groupKeyFields = getKeyFields(conf.get(GROUP_KEY_FIELDS));
+        return groupKeyFields != null ? groupKeyFields : getSortKeyFields(conf);
+    }
+
+    private static String[] getKeyFields(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        String[] keyFields = value.split(",");
+        for (int i = 0; i < keyFields.length; i++) {
+            keyFields[i] = keyFields[i].trim();
+            if (keyFields[i].isEmpty()) {
+                throw new IllegalArgumentException("Key fields can't be empty.");
+            }
+        }
+
+        return keyFields;
+    }
+
+    /**
+     * Gets the DocumentDB.pushdown from the Configuration object.
+     * @param conf job configuration object
+     * @return the value of pushdown option
+     */
+    public final static boolean getPushdown(Configuration conf) {
+        String pushdown = conf.get(PUSHDOWN);
+        return pushdown != null && pushdown.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Gets the DocumentDB.pushdownTypedColumns from the Configuration object.
+     * @param conf job configuration object
+     * @return true if the comparisons of Hive filters can be pushed down.
+     */
+    public final static boolean getPushdownTypedColumns(Configuration conf) {
+        String typedColumns = conf.get(PUSHDOWN_TYPED_COLUMNS);
+        return typedColumns != null && typedColumns.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Gets the DocumentDB.targetRequestCharge from the Configuration object.
+     * @param conf job configuration object
+     * @return the request charge per page the adaptive page size aims for.
+     */
+    public final static double getTargetRequestCharge(Configuration conf) {
+        String value = conf.get(TARGET_REQUEST_CHARGE);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_TARGET_REQUEST_CHARGE;
+        }
+
+        double targetRequestCharge;
+        try {
+            targetRequestCharge = Double.parseDouble(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("targetRequestCharge is expected to be a number.", e);
+        }
+
+        if (targetRequestCharge <= 0) {
+            throw new IllegalArgumentException("targetRequestCharge can only be a positive number.");
+        }
+
+        return targetRequestCharge;
+    }
+
+    /**
+     * Gets the DocumentDB.targetRUPerSecond from the Configuration object.
+     * @param conf job configuration object
+     * @return the request units per second of the job, 0 if it is unlimited.
+     */
+    public final static double getTargetRUPerSecond(Configuration conf) {
+        String value = conf.get(TARGET_RU_PER_SECOND);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+
+        double targetRUPerSecond;
+        try {
+            targetRUPerSecond = Double.parseDouble(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("targetRUPerSecond is expected to be a number.", e);
+        }
+
+        if (targetRUPerSecond <= 0) {
+            throw new IllegalArgumentException("targetRUPerSecond can only be a positive number.");
+        }
+
+        return targetRUPerSecond;
+    }
+
+    /**
+     * Gets the directory of the task attempt markers of transactional output.
+     * @param conf job configuration object
+     * @return the directory of the markers, or null if the job directory is unknown.
+     */
+    public final static String getTransactionDir(Configuration conf) {
+        String jobDir = conf.get(JOB_DIR);
+        return StringUtils.isEmpty(jobDir) ? null : jobDir + "/documentdb-transaction";
+    }
+
+    /**
+     * Gets the directory of the request unit leases of the running tasks.
+     * @param conf job configuration object
+     * @return the directory of the leases, or null if the job directory is unknown.
+     */
+    public final static String getRequestUnitLeaseDir(Configuration conf) {
+        String jobDir = conf.get(JOB_DIR);
+        return StringUtils.isEmpty(jobDir) ? null : jobDir + "/documentdb-ru-leases";
+    }
+
+    /**
+     * Gets the DocumentDB.targetPageBytes from the Configuration object.
+     * @param conf job configuration object
+     * @return the size of a page in bytes the adaptive page size aims for.
+     */
+    public final static long getTargetPageBytes(Configuration conf) {
+        String value = conf.get(TARGET_PAGE_BYTES);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_TARGET_PAGE_BYTES;
+        }
+
+        long targetPageBytes;
+        try {
+            targetPageBytes = Long.parseLong(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("targetPageBytes is expected to be an integer.", e);
+        }
+
+        if (targetPageBytes < 1) {
+            throw new IllegalArgumentException("targetPageBytes can only be a positive number.");
+        }
+
+        return targetPageBytes;
+    }
+
     /**
      * Copies the configuration properties for the connector to a map.
      * @param from Properties object to copy from.
@@ -0,0 +1,638 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.json.JSONObject;
+
+import com.microsoft.azure.documentdb.Database;
+import com.microsoft.azure.documentdb.Document;
+import com.microsoft.azure.documentdb.DocumentClient;
+import com.microsoft.azure.documentdb.DocumentCollection;
+import com.microsoft.azure.documentdb.StoredProcedure;
+
+/**
+ * Writes documents to the output collections in batches, shared by the record writers of both hadoop APIs.
+ * Documents are serialized once when they are written, and packed into batches of at most
+ * DocumentDB.maxBatchDocuments documents and DocumentDB.maxBatchBytes bytes.
+ * Batches are written round robin to the output collections by a pool of background threads, with at most
+ * DocumentDB.maxInFlightBatches batches being written to each collection at a time. The writer blocks when a
+ * collection has no room for another batch. The first failure of a batch is thrown by the next write or by close.
+ * Documents written to a partitioned collection are batched by partition key value, and each batch is written by
+ * the stored procedure in the scope of its partition key. Documents without a partition key value are created one
+ * by one.
+ * When DocumentDB.maxWriteErrors is set, the documents that documentdb rejects are skipped and saved to
+ * DocumentDB.deadLetterDir, and the writer only fails once more than DocumentDB.maxWriteErrors documents are rejected.
+ * With DocumentDB.transactionalOutput, the documents are tagged with the task attempt writing them, and the
+ * documents without a partition key value are merged with the output of the other attempts of the task like the
+ * stored procedure does.
+ * With DocumentDB.writeBehind, a batch that can't be written right away is appended to a local spill file instead of
+ * blocking the writer, and a drainer thread hands the spilled batches to the background threads in order.
+ * With DocumentDB.coalesceWindowDocuments or DocumentDB.coalesceWindowBytes, the last documents written are kept in a
+ * DocumentDBCoalescingWindow, and only the last version of the documents with the same id and partition key is sent.
+ * The read checkpoints of a task attempt flush its open writers before they are saved, so that a resumed attempt
+ * doesn't skip documents that were only buffered by the failed attempt.
+ */
+public class DocumentDBBatchWriter {
+    private static final Log LOG = LogFactory.getLog(DocumentDBBatchWriter.class);
+    private static final int LOG_INTERVAL = 50;
+
+    /**
+     * The batch key of the documents of non partitioned collections.
+     */
+    static final Object NO_PARTITION_KEY = new Object();
+
+    /**
+     * The batch key of the documents without a partition key value.
+     */
+    static final Object UNDEFINED_PARTITION_KEY = new Object();
+
+    /**
+     * The maximum number of documents buffered for a collection, in maxBatchDocuments. When a partitioned
+     * collection reaches it, its largest batch is written even though it isn't full.
+     */
+    private static final int MAX_BUFFERED_BATCHES = 20;
+
+    private static final int BAD_REQUEST = 400;
+    private static final int CONFLICT = 409;
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    /**
+     * The writers that are not closed yet, by task attempt.
+     */
+    private static final Map<String, List<DocumentDBBatchWriter>> OPEN_WRITERS =
+            new HashMap<String, List<DocumentDBBatchWriter>>();
+
+    private final DocumentClient client;
+    private final DocumentCollection[] collections;
+    private final StoredProcedure[] sprocs;
+    private final Semaphore[] inFlightBatches;
+    private final int maxInFlightBatches;
+    private final boolean enableUpsert;
+    private final int maxBatchDocuments;
+    private final long maxBatchBytes;
+    private final long maxWriteErrors;
+    private final DocumentDBDeadLetterWriter deadLetterWriter;
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final DocumentDBRequestLimiter requestLimiter;
+    private final DocumentDBOutputTransaction transaction;
+    private final ExecutorService executor;
+    private final DocumentDBSpillQueue spillQueue;
+    private final DocumentDBCoalescingWindow coalescingWindow;
+    private final Thread drainer;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final String attemptId;
+    private final List<Map<Object, DocumentDBDocumentBatch>> batches;
+    private final int[] bufferedDocuments;
+    private int documentsProcessed = 0;
+    private int currentStoredProcedureIndex = 0;
+    private boolean closed;
+
+    public DocumentDBBatchWriter(Configuration conf, String host, String key, String dbName, String[] collNames,
+            int outputStringPrecision, boolean upsert, String offerType) throws IOException {
+        int maxInFlightBatches = ConfigurationUtil.getMaxInFlightBatches(conf);
+        this.maxInFlightBatches = maxInFlightBatches;
+        try {
+            this.client = DocumentDBClientPool.getClient(host, key);
+
+            // The output collections are usually provisioned when the job is submitted.
+            JSONObject provisionedOutput = DocumentDBConnectorUtil.getProvisionedOutput(conf, host, dbName, collNames);
+            Database db = provisionedOutput == null ? DocumentDBConnectorUtil.GetDatabase(this.client, dbName) : null;
+            this.collections = new DocumentCollection[collNames.length];
+            this.sprocs = new StoredProcedure[collNames.length];
+            this.inFlightBatches = new Semaphore[collNames.length];
+            this.batches = new ArrayList<Map<Object, DocumentDBDocumentBatch>>(collNames.length);
+            this.bufferedDocuments = new int[collNames.length];
+            for (int i = 0; i < collNames.length; i++) {
+                if (provisionedOutput != null) {
+                    this.collections[i] = new DocumentCollection(
+                            provisionedOutput.getJSONArray("collections").getJSONObject(i).toString());
+                    this.sprocs[i] = new StoredProcedure(
+                            provisionedOutput.getJSONArray("sprocs").getJSONObject(i).toString());
+                } else {
+                    this.collections[i] = DocumentDBConnectorUtil.getOrCreateOutputCollection(this.client,
+                            db.getSelfLink(), collNames[i], outputStringPrecision, offerType);
+                    this.sprocs[i] = DocumentDBConnectorUtil.CreateBulkImportStoredProcedure(this.client,
+                            this.collections[i].getSelfLink());
+                }
+                this.inFlightBatches[i] = new Semaphore(maxInFlightBatches);
+                this.batches.add(new HashMap<Object, DocumentDBDocumentBatch>());
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        this.enableUpsert = upsert;
+        this.maxBatchDocuments = ConfigurationUtil.getMaxBatchDocuments(conf);
+        this.maxBatchBytes = ConfigurationUtil.getMaxBatchBytes(conf);
+        this.maxWriteErrors = ConfigurationUtil.getMaxWriteErrors(conf);
+        this.deadLetterWriter = DocumentDBDeadLetterWriter.create(conf);
+        this.requestLimiter = DocumentDBRequestLimiter.get(conf);
+        this.transaction = DocumentDBOutputTransaction.get(conf);
+        int threads = maxInFlightBatches * collNames.length;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WriterThreadFactory());
+
+        int coalesceWindowDocuments = ConfigurationUtil.getCoalesceWindowDocuments(conf);
+        long coalesceWindowBytes = ConfigurationUtil.getCoalesceWindowBytes(conf);
+        this.coalescingWindow = coalesceWindowDocuments > 0 || coalesceWindowBytes > 0
+                ? new DocumentDBCoalescingWindow(coalesceWindowDocuments, coalesceWindowBytes) : null;
+
+        if (ConfigurationUtil.getWriteBehind(conf)) {
+            this.spillQueue = new DocumentDBSpillQueue(new File(ConfigurationUtil.getSpillDir(conf)));
+            this.drainer = new WriterThreadFactory().newThread(new Runnable() {
+                public void run() {
+                    drainSpillQueue();
+                }
+            });
+            this.drainer.start();
+        } else {
+            this.spillQueue = null;
+            this.drainer = null;
+        }
+
+        this.attemptId = conf.get(ConfigurationUtil.TASK_ATTEMPT_ID);
+        if (this.attemptId != null) {
+            synchronized (OPEN_WRITERS) {
+                List<DocumentDBBatchWriter> writers = OPEN_WRITERS.get(this.attemptId);
+                if (writers == null) {
+                    writers = new ArrayList<DocumentDBBatchWriter>();
+                    OPEN_WRITERS.put(this.attemptId, writers);
+                }
+
+                writers.add(this);
+            }
+        }
+    }
+
+    /**
+     * Adds a document to a batch of the current collection, and hands the batch to the background threads once it
+     * is full. With a coalescing window, the document is added to a batch once it leaves the window, unless a later
+     * version replaced it.
+     * @param doc the document to write.
+     * @throws IOException if a previous batch failed to be written.
+     */
+    public void write(Document doc) throws IOException {
+        this.throwIfFailed();
+        DocumentDBConnectorUtil.addIdIfMissing(doc);
+        if (this.transaction != null) {
+            this.transaction.tag(doc);
+        }
+
+        String json = doc.toString();
+        if (this.coalescingWindow != null) {
+            this.coalescingWindow.add(this.getCoalescingKey(doc), doc, json);
+            while (this.coalescingWindow.isOverflowing()) {
+                DocumentDBCoalescingWindow.PendingDocument pending = this.coalescingWindow.removeOldest();
+                this.addToBatch(pending.getDocument(), pending.getJson());
+            }
+        } else {
+            this.addToBatch(doc, json);
+        }
+
+        this.documentsProcessed++;
+        if (this.documentsProcessed % LOG_INTERVAL == 0) {
+            LOG.info(String.format("wrote %d documents", this.documentsProcessed));
+        }
+    }
+
+    private void addToBatch(Document doc, String json) throws IOException {
+        int index = this.currentStoredProcedureIndex;
+        Object batchKey = this.getBatchKey(index, doc);
+        Map<Object, DocumentDBDocumentBatch> collectionBatches = this.batches.get(index);
+        DocumentDBDocumentBatch batch = collectionBatches.get(batchKey);
+        if (batch == null) {
+            batch = new DocumentDBDocumentBatch(this.maxBatchDocuments, this.maxBatchBytes);
+            collectionBatches.put(batchKey, batch);
+        }
+
+        if (!batch.add(doc, json)) {
+            this.writeBatch(index, batchKey);
+            batch = new DocumentDBDocumentBatch(this.maxBatchDocuments, this.maxBatchBytes);
+            collectionBatches.put(batchKey, batch);
+            batch.add(doc, json);
+        }
+
+        this.bufferedDocuments[index]++;
+        if (batch.isFull()) {
+            this.writeBatch(index, batchKey);
+        } else if (this.bufferedDocuments[index] >= MAX_BUFFERED_BATCHES * this.maxBatchDocuments) {
+            this.writeBatch(index, this.getLargestBatchKey(index));
+        }
+    }
+
+    /**
+     * Writes the documents of the coalescing window and of the open batches, and waits for all the batches to be
+     * written.
+     * @throws IOException if a batch failed to be written.
+     */
+    public void flush() throws IOException {
+        this.throwIfFailed();
+        if (this.coalescingWindow != null) {
+            while (!this.coalescingWindow.isEmpty()) {
+                DocumentDBCoalescingWindow.PendingDocument pending = this.coalescingWindow.removeOldest();
+                this.addToBatch(pending.getDocument(), pending.getJson());
+            }
+        }
+
+        for (int index = 0; index < this.collections.length; index++) {
+            List<Object> batchKeys = new ArrayList<Object>(this.batches.get(index).keySet());
+            for (Object batchKey : batchKeys) {
+                this.writeBatch(index, batchKey);
+            }
+        }
+
+        try {
+            if (this.spillQueue != null) {
+                while (!this.spillQueue.awaitEmpty(TimeUnit.SECONDS.toMillis(1))) {
+                    this.throwIfFailed();
+                }
+            }
+
+            // A collection has all its permits back once its batches are written.
+            for (Semaphore inFlight : this.inFlightBatches) {
+                inFlight.acquire(this.maxInFlightBatches);
+                inFlight.release(this.maxInFlightBatches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the batches being written.");
+        }
+
+        this.throwIfFailed();
+    }
+
+    /**
+     * Flushes the writers of a task attempt that are not closed yet. The writers are not thread safe, so this must be
+     * called on the thread of the task attempt that writes to them.
+     * @param attemptId the id of the task attempt.
+     * @throws IOException if a batch failed to be written.
+     */
+    public static void flushOpenWriters(String attemptId) throws IOException {
+        List<DocumentDBBatchWriter> writers;
+        synchronized (OPEN_WRITERS) {
+            List<DocumentDBBatchWriter> openWriters = OPEN_WRITERS.get(attemptId);
+            if (openWriters == null) {
+                return;
+            }
+
+            writers = new ArrayList<DocumentDBBatchWriter>(openWriters);
+        }
+
+        for (DocumentDBBatchWriter writer : writers) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Writes the last batch, waits for all the batches to be written and throws the first failure.
+     * @throws IOException if a batch failed to be written.
+     */
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        if (this.attemptId != null) {
+            synchronized (OPEN_WRITERS) {
+                List<DocumentDBBatchWriter> writers = OPEN_WRITERS.get(this.attemptId);
+                writers.remove(this);
+                if (writers.isEmpty()) {
+                    OPEN_WRITERS.remove(this.attemptId);
+                }
+            }
+        }
+
+        try {
+            this.writeRemainingBatches();
+        } finally {
+            if (this.requestLimiter != null) {
+                this.requestLimiter.release();
+            }
+        }
+
+        if (this.writeErrors.get() > 0) {
+            LOG.warn(String.format("%d documents failed to be written and were skipped.", this.writeErrors.get()));
+        }
+
+        this.throwIfFailed();
+    }
+
+    /**
+     * Writes the documents of the coalescing window and of the open batches, and waits for the background threads to
+     * write all the batches.
+     */
+    private void writeRemainingBatches() throws IOException {
+        try {
+            if (this.coalescingWindow != null) {
+                while (!this.coalescingWindow.isEmpty() && this.failure.get() == null) {
+                    DocumentDBCoalescingWindow.PendingDocument pending = this.coalescingWindow.removeOldest();
+                    this.addToBatch(pending.getDocument(), pending.getJson());
+                }
+
+                LOG.info(String.format("%d documents were replaced by a later version and not written.",
+                        this.coalescingWindow.getCoalescedDocuments()));
+            }
+
+            for (int index = 0; index < this.collections.length && this.failure.get() == null; index++) {
+                List<Object> batchKeys = new ArrayList<Object>(this.batches.get(index).keySet());
+                for (Object batchKey : batchKeys) {
+                    this.writeBatch(index, batchKey);
+                }
+            }
+        } finally {
+            try {
+                this.awaitDrainer();
+            } finally {
+                this.executor.shutdown();
+            }
+        }
+
+        try {
+            while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info("Waiting for the batches being written to documentdb.");
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the batches being written.");
+        } finally {
+            if (this.deadLetterWriter != null) {
+                this.deadLetterWriter.close();
+            }
+            if (this.spillQueue != null) {
+                this.spillQueue.delete();
+            }
+        }
+    }
+
+    /**
+     * Hands a batch of a collection to the background threads, and moves on to the next collection. In write-behind
+     * mode, the batch is spilled if the collection has no room for another batch or other batches are spilled.
+     */
+    private void writeBatch(int index, Object batchKey) throws IOException {
+        DocumentDBDocumentBatch batch = this.batches.get(index).remove(batchKey);
+        this.bufferedDocuments[index] -= batch.size();
+
+        // Writing to output collections is round robin for each batch.
+        this.currentStoredProcedureIndex = (index + 1) % this.collections.length;
+
+        if (this.spillQueue != null) {
+            if (this.spillQueue.isEmpty() && this.inFlightBatches[index].tryAcquire()) {
+                this.submitBatch(index, batchKey, batch);
+            } else {
+                this.spillQueue.put(index, batchKey, batch.getJsonDocuments());
+            }
+
+            return;
+        }
+
+        try {
+            this.inFlightBatches[index].acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write a batch.");
+        }
+
+        this.submitBatch(index, batchKey, batch);
+    }
+
+    /**
+     * Hands the spilled batches to the background threads as the collections have room for them, until the spill
+     * queue is closed and empty, or a batch failed to be written.
+     */
+    private void drainSpillQueue() {
+        try {
+            DocumentDBSpillQueue.SpilledBatch spilledBatch;
+            while (this.failure.get() == null && (spilledBatch = this.spillQueue.peek()) != null) {
+                // The batch stays in the queue until it is submitted, so that the writer doesn't submit a newer
+                // batch before it.
+                this.inFlightBatches[spilledBatch.index].acquire();
+                this.submitBatch(spilledBatch.index, spilledBatch.batchKey, spilledBatch.batch);
+                this.spillQueue.remove();
+            }
+        } catch (Throwable t) {
+            this.failure.compareAndSet(null, t);
+        }
+    }
+
+    /**
+     * Waits for the drainer to hand all the spilled batches to the background threads.
+     */
+    private void awaitDrainer() throws IOException {
+        if (this.drainer == null) {
+            return;
+        }
+
+        this.spillQueue.close();
+        try {
+            this.drainer.join();
+        } catch (InterruptedException e) {
+            this.drainer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the spilled batches.");
+        }
+    }
+
+    /**
+     * Writes a batch with a background thread, once the collection has room for it.
+     */
+    private void submitBatch(final int index, final Object batchKey, final DocumentDBDocumentBatch batch) {
+        this.executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (failure.get() == null) {
+                        executeBatch(index, batchKey, batch);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    inFlightBatches[index].release();
+                }
+            }
+        });
+    }
+
+    private void executeBatch(int index, Object batchKey, DocumentDBDocumentBatch batch) throws IOException {
+        DocumentCollection collection = this.collections[index];
+        if (batchKey == UNDEFINED_PARTITION_KEY) {
+            List<Document> documents = batch.getDocuments();
+            for (int i = 0; i < documents.size(); i++) {
+                try {
+                    if (this.transaction != null) {
+                        this.transaction.writeDocument(this.client, collection, documents.get(i), this.enableUpsert,
+                                this.requestLimiter);
+                    } else {
+                        DocumentDBConnectorUtil.createDocument(this.client, collection.getSelfLink(),
+                                documents.get(i), this.enableUpsert, this.requestLimiter);
+                    }
+                } catch (IllegalStateException e) {
+                    this.onWriteError(batch.getJsonDocuments().get(i), e);
+                }
+            }
+        } else {
+            this.executeStoredProcedure(index, batch.getJsonDocuments(),
+                    batchKey == NO_PARTITION_KEY ? null : batchKey);
+        }
+    }
+
+    private void executeStoredProcedure(int index, List<String> jsonDocuments, Object partitionKeyValue)
+            throws IOException {
+        boolean continueOnError = this.maxWriteErrors > 0;
+        List<JSONObject> failures;
+        try {
+            failures = DocumentDBConnectorUtil.executeWriteStoredProcedure(this.client, this.sprocs[index],
+                    jsonDocuments, this.enableUpsert, partitionKeyValue, continueOnError, this.requestLimiter);
+        } catch (DocumentDBConnectorUtil.PartialWriteException e) {
+            this.onWriteErrors(jsonDocuments, e.getFailures());
+            List<String> unprocessedDocuments = jsonDocuments.subList(e.getProcessedCount(), jsonDocuments.size());
+            if (unprocessedDocuments.size() == 1 || !continueOnError || !isDocumentError(e)) {
+                this.onWriteError(unprocessedDocuments.get(0), e);
+                return;
+            }
+
+            // A whole request was rejected, such as when a document is too large, write the documents it had one by
+            // one to skip the rejected ones. The documents processed by the earlier requests aren't written again.
+            for (String json : unprocessedDocuments) {
+                this.executeStoredProcedure(index, Collections.singletonList(json), partitionKeyValue);
+            }
+
+            return;
+        }
+
+        this.onWriteErrors(jsonDocuments, failures);
+    }
+
+    /**
+     * Skips the documents the stored procedure failed to write, as long as the error budget isn't exhausted.
+     */
+    private void onWriteErrors(List<String> jsonDocuments, List<JSONObject> failures) throws IOException {
+        for (JSONObject failure : failures) {
+            this.onWriteError(jsonDocuments.get(failure.getInt("index")), failure.optInt("code", -1),
+                    failure.optString("message"));
+        }
+    }
+
+    /**
+     * Skips a document that failed to be written if the error is caused by the document and the error budget isn't
+     * exhausted, otherwise rethrows the error.
+     */
+    private void onWriteError(String json, IllegalStateException e) throws IOException {
+        if (this.maxWriteErrors == 0 || !isDocumentError(e)) {
+            throw e;
+        }
+
+        this.onWriteError(json, DocumentDBConnectorUtil.getStatusCode(e), e.getMessage());
+    }
+
+    private void onWriteError(String json, int statusCode, String message) throws IOException {
+        long errors = this.writeErrors.incrementAndGet();
+        LOG.warn(String.format("Failed to write a document, status code %d: %s", statusCode, message));
+        if (this.deadLetterWriter != null) {
+            this.deadLetterWriter.write(json, statusCode, message);
+        }
+
+        if (errors > this.maxWriteErrors) {
+            throw new IOException(String.format("%d documents failed to be written, more than maxWriteErrors (%d).",
+                    errors, this.maxWriteErrors));
+        }
+    }
+
+    /**
+     * Bad requests, conflicts and too large requests are caused by the documents of the request, other errors fail
+     * the writer.
+     */
+    private static boolean isDocumentError(Exception e) {
+        int statusCode = DocumentDBConnectorUtil.getStatusCode(e);
+        return statusCode == BAD_REQUEST || statusCode == CONFLICT || statusCode == REQUEST_ENTITY_TOO_LARGE;
+    }
+
+    private Object getBatchKey(int index, Document doc) {
+        DocumentCollection collection = this.collections[index];
+        if (collection.getPartitionKey() == null) {
+            return NO_PARTITION_KEY;
+        }
+
+        Object partitionKeyValue = DocumentDBConnectorUtil.getPartitionKeyValue(collection, doc);
+        return partitionKeyValue != null ? partitionKeyValue : UNDEFINED_PARTITION_KEY;
+    }
+
+    /**
+     * Gets the key of a document in the coalescing window: its id, and its partition key values in the partitioned
+     * output collections. The collection of a document is only picked once it leaves the window, so two documents
+     * are only coalesced when they have the same partition key value in every output collection.
+     */
+    private String getCoalescingKey(Document doc) {
+        StringBuilder key = new StringBuilder(doc.getId());
+        for (DocumentCollection collection : this.collections) {
+            if (collection.getPartitionKey() == null) {
+                continue;
+            }
+
+            key.append('\u0000');
+            Object partitionKeyValue = DocumentDBConnectorUtil.getPartitionKeyValue(collection, doc);
+            if (partitionKeyValue != null) {
+                char type = partitionKeyValue instanceof String ? 's'
+                        : partitionKeyValue instanceof Boolean ? 'b' : 'n';
+                key.append(type).append(partitionKeyValue);
+            }
+        }
+
+        return key.toString();
+    }
+
+    private Object getLargestBatchKey(int index) {
+        Object largestBatchKey = null;
+        int largestBatchSize = -1;
+        for (Map.Entry<Object, DocumentDBDocumentBatch> entry : this.batches.get(index).entrySet()) {
+            if (entry.getValue().size() > largestBatchSize) {
+                largestBatchKey = entry.getKey();
+                largestBatchSize = entry.getValue().size();
+            }
+        }
+
+        return largestBatchKey;
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable t = this.failure.get();
+        if (t != null) {
+            throw new IOException("Failed to write a batch of documents to documentdb.", t);
+        }
+    }
+
+    /**
+     * Creates the daemon threads writing the batches.
+     */
+    private static class WriterThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DocumentDB batch writer " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A compact binary encoding of JSON documents, used by DocumentDBWritable to carry documents between tasks.
+ * Every value starts with a tag byte. Integers are variable length longs and other numbers keep their text. Strings
+ * are length prefixed. Objects and arrays list their members until an end marker, so they can be encoded in a single
+ * pass over the JSON text. Property names are written once per document, and later occurrences refer to the first
+ * one by index. Strings are encoded like UTF-8 with every UTF-16 unit encoded on its own, so that any Java string
+ * round trips.
+ * An encoding instance reuses its buffers between documents and must not be shared between threads.
+ */
+public class DocumentDBBinaryEncoding {
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte LONG = 3;
+    static final byte NUMBER = 4;
+    static final byte STRING = 5;
+    static final byte OBJECT = 6;
+    static final byte ARRAY = 7;
+    static final byte END = 8;
+
+    /**
+     * The property name codes: the end of an object, a new name, or the index of a previous name plus FIRST_NAME.
+     */
+    static final int END_OF_OBJECT = 0;
+    static final int NEW_NAME = 1;
+    static final int FIRST_NAME = 2;
+
+    /**
+     * The longest integers that are always encoded as longs.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final Map<String, Integer> names = new HashMap<String, Integer>();
+    private final List<String> decodedNames = new ArrayList<String>();
+    private final StringBuilder token = new StringBuilder();
+    private byte[] stringBuffer = new byte[256];
+    private String json;
+    private int position;
+
+    /**
+     * Encodes a document.
+     * @param json the document as compact JSON text.
+     * @param out the output of the encoded document.
+     */
+    public void encode(String json, DataOutput out) throws IOException {
+        this.json = json;
+        this.position = 0;
+        this.names.clear();
+        try {
+            this.encodeValue(out);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Unexpected end of the document.", e);
+        } finally {
+            this.json = null;
+        }
+    }
+
+    /**
+     * Decodes a document.
+     * @param in the encoded document.
+     * @param out the output of the document as compact JSON text.
+     */
+    public void decode(DataInput in, StringBuilder out) throws IOException {
+        this.decodedNames.clear();
+        this.decodeValue(in, in.readByte(), out);
+    }
+
+    private void encodeValue(DataOutput out) throws IOException {
+        this.skipWhitespace();
+        char c = this.json.charAt(this.position);
+        switch (c) {
+        case '{':
+            this.position++;
+            out.writeByte(OBJECT);
+            if (this.nextNonWhitespace() == '}') {
+                this.position++;
+            } else {
+                do {
+                    this.skipWhitespace();
+                    this.writeName(out, this.readString());
+                    this.expect(':');
+                    this.encodeValue(out);
+                } while (this.readSeparator('}'));
+            }
+
+            WritableUtils.writeVInt(out, END_OF_OBJECT);
+            break;
+        case '[':
+            this.position++;
+            out.writeByte(ARRAY);
+            if (this.nextNonWhitespace() == ']') {
+                this.position++;
+            } else {
+                do {
+                    this.encodeValue(out);
+                } while (this.readSeparator(']'));
+            }
+
+            out.writeByte(END);
+            break;
+        case '"':
+            out.writeByte(STRING);
+            this.writeString(out, this.readString());
+            break;
+        case 't':
+            this.expectLiteral("true");
+            out.writeByte(TRUE);
+            break;
+        case 'f':
+            this.expectLiteral("false");
+            out.writeByte(FALSE);
+            break;
+        case 'n':
+            this.expectLiteral("null");
+            out.writeByte(NULL);
+            break;
+        default:
+            this.encodeNumber(out);
+        }
+    }
+
+    private void encodeNumber(DataOutput out) throws IOException {
+        int start = this.position;
+        boolean integer = true;
+        while (this.position < this.json.length()) {
+            char c = this.json.charAt(this.position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integer = false;
+            } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                break;
+            }
+
+            this.position++;
+        }
+
+        if (start == this.position) {
+            throw new IOException(String.format("Unexpected character '%c' at %d.", this.json.charAt(start), start));
+        }
+
+        String number = this.json.substring(start, this.position);
+        int digits = number.startsWith("-") ? number.length() - 1 : number.length();
+        if (integer && digits <= MAX_LONG_DIGITS && !number.equals("-0")) {
+            out.writeByte(LONG);
+            WritableUtils.writeVLong(out, Long.parseLong(number));
+        } else {
+            out.writeByte(NUMBER);
+            this.writeString(out, number);
+        }
+    }
+
+    private void writeName(DataOutput out, String name) throws IOException {
+        Integer index = this.names.get(name);
+        if (index != null) {
+            WritableUtils.writeVInt(out, FIRST_NAME + index);
+        } else {
+            this.names.put(name, this.names.size());
+            WritableUtils.writeVInt(out, NEW_NAME);
+            this.writeString(out, name);
+        }
+    }
+
+    private void writeString(DataOutput out, String value) throws IOException {
+        int bytes = getEncodedLength(value);
+        if (this.stringBuffer.length < bytes) {
+            this.stringBuffer = new byte[Math.max(bytes, this.stringBuffer.length * 2)];
+        }
+
+        encodeString(value, this.stringBuffer);
+        WritableUtils.writeVInt(out, bytes);
+        out.write(this.stringBuffer, 0, bytes);
+    }
+
+    /**
+     * @return the number of bytes of the encoded string.
+     */
+    static int getEncodedLength(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Encodes a string without its length into a buffer of at least getEncodedLength(value) bytes.
+     */
+    static void encodeString(String value, byte[] buffer) {
+        int offset = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[offset++] = (byte) (0xC0 | (c >> 6));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                buffer[offset++] = (byte) (0xE0 | (c >> 12));
+                buffer[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON string at the current position and unescapes it.
+     */
+    private String readString() throws IOException {
+        if (this.json.charAt(this.position) != '"') {
+            throw new IOException(String.format("Expected a string at %d.", this.position));
+        }
+
+        this.position++;
+        StringBuilder token = this.token;
+        token.setLength(0);
+        while (true) {
+            char c = this.json.charAt(this.position++);
+            if (c == '"') {
+                return token.toString();
+            } else if (c != '\\') {
+                token.append(c);
+                continue;
+            }
+
+            char escaped = this.json.charAt(this.position++);
+            switch (escaped) {
+            case 'b':
+                token.append('\b');
+                break;
+            case 'f':
+                token.append('\f');
+                break;
+            case 'n':
+                token.append('\n');
+                break;
+            case 'r':
+                token.append('\r');
+                break;
+            case 't':
+                token.append('\t');
+                break;
+            case 'u':
+                token.append((char) Integer.parseInt(this.json.substring(this.position, this.position + 4), 16));
+                this.position += 4;
+                break;
+            default:
+                token.append(escaped);
+            }
+        }
+    }
+
+    /**
+     * Reads the separator after a member of an object or an array.
+     * @return true if another member follows, false at the end of the object or array.
+     */
+    private boolean readSeparator(char end) throws IOException {
+        char c = this.nextNonWhitespace();
+        this.position++;
+        if (c == ',') {
+            return true;
+        } else if (c == end) {
+            return false;
+        }
+
+        throw new IOException(String.format("Expected ',' or '%c' at %d.", end, this.position - 1));
+    }
+
+    private void expect(char expected) throws IOException {
+        if (this.nextNonWhitespace() != expected) {
+            throw new IOException(String.format("Expected '%c' at %d.", expected, this.position));
+        }
+
+        this.position++;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        if (!this.json.startsWith(literal, this.position)) {
+            throw new IOException(String.format("Expected %s at %d.", literal, this.position));
+        }
+
+        this.position += literal.length();
+    }
+
+    private char nextNonWhitespace() {
+        this.skipWhitespace();
+        return this.json.charAt(this.position);
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.json.length() && Character.isWhitespace(this.json.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    private void decodeValue(DataInput in, byte tag, StringBuilder out) throws IOException {
+        switch (tag) {
+        case NULL:
+            out.append("null");
+            break;
+        case FALSE:
+            out.append("false");
+            break;
+        case TRUE:
+            out.append("true");
+            break;
+        case LONG:
+            out.append(WritableUtils.readVLong(in));
+            break;
+        case NUMBER:
+            this.readString(in, out);
+            break;
+        case STRING:
+            out.append('"');
+            this.token.setLength(0);
+            this.readString(in, this.token);
+            appendEscaped(this.token, out);
+            out.append('"');
+            break;
+        case OBJECT:
+            out.append('{');
+            for (int code = WritableUtils.readVInt(in), i = 0; code != END_OF_OBJECT;
+                    code = WritableUtils.readVInt(in), i++) {
+                String name;
+                if (code == NEW_NAME) {
+                    this.token.setLength(0);
+                    this.readString(in, this.token);
+                    name = this.token.toString();
+                    this.decodedNames.add(name);
+                } else {
+                    name = this.decodedNames.get(code - FIRST_NAME);
+                }
+
+                if (i > 0) {
+                    out.append(',');
+                }
+
+                out.append('"');
+                appendEscaped(name, out);
+                out.append("\":");
+                this.decodeValue(in, in.readByte(), out);
+            }
+
+            out.append('}');
+            break;
+        case ARRAY:
+            out.append('[');
+            for (byte next = in.readByte(), i = 0; next != END; next = in.readByte(), i = 1) {
+                if (i > 0) {
+                    out.append(',');
+                }
+
+                this.decodeValue(in, next, out);
+            }
+
+            out.append(']');
+            break;
+        default:
+            throw new IOException(String.format("Unknown tag %d in the encoded document.", tag));
+        }
+    }
+
+    private void readString(DataInput in, StringBuilder out) throws IOException {
+        int bytes = WritableUtils.readVInt(in);
+        if (this.stringBuffer.length < bytes) {
+            this.stringBuffer = new byte[Math.max(bytes, this.stringBuffer.length * 2)];
+        }
+
+        in.readFully(this.stringBuffer, 0, bytes);
+        decodeString(this.stringBuffer, 0, bytes, out);
+    }
+
+    /**
+     * Decodes a string encoded without its length.
+     */
+    static void decodeString(byte[] buffer, int offset, int bytes, StringBuilder out) {
+        int end = offset + bytes;
+        while (offset < end) {
+            int b = buffer[offset++] & 0xFF;
+            if (b < 0x80) {
+                out.append((char) b);
+            } else if (b < 0xE0) {
+                out.append((char) (((b & 0x1F) << 6) | (buffer[offset++] & 0x3F)));
+            } else {
+                out.append((char) (((b & 0x0F) << 12) | ((buffer[offset++] & 0x3F) << 6)
+                        | (buffer[offset++] & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Appends a string escaped for a JSON string literal.
+     */
+    private static void appendEscaped(CharSequence value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\b':
+                out.append("\\b");
+                break;
+            case '\f':
+                out.append("\\f");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+}
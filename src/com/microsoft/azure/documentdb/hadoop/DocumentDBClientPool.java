@@ -0,0 +1,62 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.azure.documentdb.ConnectionPolicy;
+import com.microsoft.azure.documentdb.ConsistencyLevel;
+import com.microsoft.azure.documentdb.DocumentClient;
+
+/**
+ * A process wide registry of DocumentClient instances. Readers, writers and input formats running in the same JVM
+ * share one client, and its connection pool, per endpoint, key and consistency level.
+ * The pooled clients live as long as the JVM and must not be closed by their users.
+ */
+public class DocumentDBClientPool {
+    private static final Log LOG = LogFactory.getLog(DocumentDBClientPool.class);
+    private static final ConcurrentMap<String, DocumentClient> CLIENTS = new ConcurrentHashMap<String, DocumentClient>();
+
+    /**
+     * Gets the DocumentClient for an endpoint and key with session consistency.
+     * @param host the documentdb endpoint.
+     * @param key the masterkey for the documentdb account.
+     * @return the shared DocumentClient instance.
+     */
+    public static DocumentClient getClient(String host, String key) {
+        return getClient(host, key, ConsistencyLevel.Session);
+    }
+
+    /**
+     * Gets the DocumentClient for an endpoint, key and consistency level, creating it on first use.
+     * @param host the documentdb endpoint.
+     * @param key the masterkey for the documentdb account.
+     * @param consistencyLevel the consistency level of the client.
+     * @return the shared DocumentClient instance.
+     */
+    public static DocumentClient getClient(String host, String key, ConsistencyLevel consistencyLevel) {
+        String clientKey = host + "|" + key + "|" + consistencyLevel;
+        DocumentClient client = CLIENTS.get(clientKey);
+        if (client != null) {
+            return client;
+        }
+
+        synchronized (CLIENTS) {
+            client = CLIENTS.get(clientKey);
+            if (client == null) {
+                LOG.info(String.format("Creating a DocumentClient for %s with %s consistency", host, consistencyLevel));
+                ConnectionPolicy policy = ConnectionPolicy.GetDefault();
+                policy.setUserAgentSuffix(DocumentDBConnectorUtil.UserAgentSuffix);
+                client = new DocumentClient(host, key, policy, consistencyLevel);
+                CLIENTS.put(clientKey, client);
+            }
+        }
+
+        return client;
+    }
+}
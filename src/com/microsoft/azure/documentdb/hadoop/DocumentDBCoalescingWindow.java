@@ -0,0 +1,109 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * Keeps the last documents written, so that a document superseded by a later version with the same id and partition
+ * key is never sent to documentdb. The window is bounded by a number of documents and by the size of the serialized
+ * documents, measured like the size of batches by DocumentDBDocumentBatch.getEncodedSize, and evicts the documents
+ * that were written the longest ago first. A new version of a document moves it to the end of the window.
+ */
+public class DocumentDBCoalescingWindow {
+    private final int maxDocuments;
+    private final long maxBytes;
+    private final LinkedHashMap<String, PendingDocument> documents = new LinkedHashMap<String, PendingDocument>();
+    private long bytes;
+    private long coalescedDocuments;
+
+    /**
+     * @param maxDocuments the maximum number of documents in the window, 0 if it isn't limited by documents.
+     * @param maxBytes the maximum size of the serialized documents in the window, 0 if it isn't limited by size.
+     */
+    public DocumentDBCoalescingWindow(int maxDocuments, long maxBytes) {
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a document to the window, replacing the previous version of the document.
+     * @param key the id and the partition key of the document.
+     * @param doc the document.
+     * @param json the serialized document.
+     */
+    public void add(String key, Document doc, String json) {
+        PendingDocument previous = this.documents.remove(key);
+        if (previous != null) {
+            this.bytes -= previous.size;
+            this.coalescedDocuments++;
+        }
+
+        PendingDocument pending = new PendingDocument(doc, json);
+        this.documents.put(key, pending);
+        this.bytes += pending.size;
+    }
+
+    /**
+     * @return true if the window holds more documents than its limits, and its oldest document must be removed.
+     */
+    public boolean isOverflowing() {
+        return (this.maxDocuments > 0 && this.documents.size() > this.maxDocuments)
+                || (this.maxBytes > 0 && this.bytes > this.maxBytes);
+    }
+
+    public boolean isEmpty() {
+        return this.documents.isEmpty();
+    }
+
+    /**
+     * Removes the document that was written the longest ago.
+     * @return the document, or null if the window is empty.
+     */
+    public PendingDocument removeOldest() {
+        Iterator<Map.Entry<String, PendingDocument>> iterator = this.documents.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+
+        PendingDocument oldest = iterator.next().getValue();
+        iterator.remove();
+        this.bytes -= oldest.size;
+        return oldest;
+    }
+
+    /**
+     * @return the number of documents replaced by a later version, which were not written.
+     */
+    public long getCoalescedDocuments() {
+        return this.coalescedDocuments;
+    }
+
+    /**
+     * A document in the window, its serialized form and its size.
+     */
+    public static class PendingDocument {
+        private final Document document;
+        private final String json;
+        private final long size;
+
+        public PendingDocument(Document document, String json) {
+            this.document = document;
+            this.json = json;
+            this.size = DocumentDBDocumentBatch.getEncodedSize(json);
+        }
+
+        public Document getDocument() {
+            return this.document;
+        }
+
+        public String getJson() {
+            return this.json;
+        }
+    }
+}
@@ -7,13 +7,19 @@ package com.microsoft.azure.documentdb.hadoop;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import com.microsoft.azure.documentdb.DataType;
 import com.microsoft.azure.documentdb.Database;
@@ -21,16 +27,20 @@ import com.microsoft.azure.documentdb.Document;
 import com.microsoft.azure.documentdb.DocumentClient;
 import com.microsoft.azure.documentdb.DocumentClientException;
 import com.microsoft.azure.documentdb.DocumentCollection;
+import com.microsoft.azure.documentdb.FeedOptions;
 import com.microsoft.azure.documentdb.IncludedPath;
 import com.microsoft.azure.documentdb.IndexingPolicy;
 import com.microsoft.azure.documentdb.PartitionKey;
+import com.microsoft.azure.documentdb.PartitionKeyRange;
 import com.microsoft.azure.documentdb.QueryIterable;
 import com.microsoft.azure.documentdb.RangeIndex;
 import com.microsoft.azure.documentdb.RequestOptions;
+import com.microsoft.azure.documentdb.ResourceResponse;
 import com.microsoft.azure.documentdb.SqlParameter;
 import com.microsoft.azure.documentdb.SqlParameterCollection;
 import com.microsoft.azure.documentdb.SqlQuerySpec;
 import com.microsoft.azure.documentdb.StoredProcedure;
+import com.microsoft.azure.documentdb.StoredProcedureResponse;
 
 /**
  * 
@@ -41,7 +51,7 @@ public class DocumentDBConnectorUtil {
     private static final Log LOG = LogFactory.getLog(DocumentDBConnectorUtil.class);
     private final static int MAX_SCRIPT_DOCS = 50;
     private final static int MAX_SCRIPT_SIZE = 50000;
-    private final static String BULK_IMPORT_ID = "HadoopBulkImportSprocV1";
+    private final static String BULK_IMPORT_ID = "HadoopBulkImportSprocV2";
     private final static String BULK_IMPORT_PATH = "/BulkImportScript.js";
     private final static int CONFLICT_ERROR = 409;
     
@@ -54,14 +64,34 @@ public class DocumentDBConnectorUtil {
      * @param isUpsert Specify if the document should be upserted.
      */
     public static Document createDocument(DocumentClient client, String collectionSelfLink, Document doc, boolean isUpsert) {
+        return createDocument(client, collectionSelfLink, doc, isUpsert, null);
+    }
+
+    /**
+     * Creates a document and replaces it if it already exists when isUpsert is true, paced by a request limiter.
+     * @param requestLimiter the request limiter of the task, null to send the request right away.
+     */
+    public static Document createDocument(DocumentClient client, String collectionSelfLink, Document doc, boolean isUpsert,
+            DocumentDBRequestLimiter requestLimiter) {
         BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
         while(retryPolicy.shouldRetry()){
         	try {
+	        	if (requestLimiter != null) {
+	        		requestLimiter.acquire();
+	        	}
+
+	        	ResourceResponse<Document> response;
 	        	if(isUpsert) {
-	        		return client.upsertDocument(collectionSelfLink, doc, null, false).getResource();
+	        		response = client.upsertDocument(collectionSelfLink, doc, null, false);
 	        	} else {
-	        		return client.createDocument(collectionSelfLink, doc, null, false).getResource();	
+	        		response = client.createDocument(collectionSelfLink, doc, null, false);
 	        	}
+
+	        	if (requestLimiter != null) {
+	        		requestLimiter.charge(response.getRequestCharge());
+	        	}
+
+	        	return response.getResource();
         	} catch(DocumentClientException e){
         		retryPolicy.errorOccured(e);
         	}            
@@ -90,15 +120,26 @@ public class DocumentDBConnectorUtil {
 
             BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
             
-            while(retryPolicy.shouldRetry()) {
-                try {
-                    RequestOptions options = new RequestOptions();
-                    options.setOfferType(offerType);
-                    outputCollection = client.createCollection(databaseSelfLink, outputColl, options).getResource();
-                    break;
-                } catch (Exception e) {
-                    retryPolicy.errorOccured(e);
+            try {
+                while(retryPolicy.shouldRetry()) {
+                    try {
+                        RequestOptions options = new RequestOptions();
+                        options.setOfferType(offerType);
+                        outputCollection = client.createCollection(databaseSelfLink, outputColl, options).getResource();
+                        DocumentDBMetadataCache.put(client, getCollectionCacheKey(databaseSelfLink, collectionId),
+                                outputCollection);
+                        break;
+                    } catch (Exception e) {
+                        retryPolicy.errorOccured(e);
+                    }
                 }
+            } catch (IllegalStateException e) {
+                if (getStatusCode(e) != CONFLICT_ERROR) {
+                    throw e;
+                }
+
+                // Another writer created the collection in the meantime.
+                outputCollection = DocumentDBConnectorUtil.GetDocumentCollection(client, databaseSelfLink, collectionId);
             }
         }
         
@@ -112,6 +153,12 @@ public class DocumentDBConnectorUtil {
      * @param collectionId The id of the output collection.
      */
     public static DocumentCollection GetDocumentCollection(DocumentClient client, String databaseSelfLink, String collectionId) {
+        String cacheKey = getCollectionCacheKey(databaseSelfLink, collectionId);
+        DocumentCollection cachedCollection = DocumentDBMetadataCache.get(client, cacheKey, DocumentCollection.class);
+        if (cachedCollection != null) {
+            return cachedCollection;
+        }
+
         BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
         QueryIterable<DocumentCollection> collIterable = client.queryCollections(
                 databaseSelfLink,
@@ -133,10 +180,17 @@ public class DocumentDBConnectorUtil {
             return null;
         }
         
+        DocumentDBMetadataCache.put(client, cacheKey, collections.get(0));
         return collections.get(0);
     }
     
     public static Database GetDatabase(DocumentClient client, String databaseId) {
+        String cacheKey = "dbs/" + databaseId;
+        Database cachedDatabase = DocumentDBMetadataCache.get(client, cacheKey, Database.class);
+        if (cachedDatabase != null) {
+            return cachedDatabase;
+        }
+
         BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
         QueryIterable<Database> dbIterable = client.queryDatabases(
                 new SqlQuerySpec("SELECT * FROM root r WHERE r.id=@id",
@@ -157,17 +211,87 @@ public class DocumentDBConnectorUtil {
             return null;
         }
         
+        DocumentDBMetadataCache.put(client, cacheKey, databases.get(0));
         return databases.get(0);
     }
     
     /**
-     * Gets the bulk import stored procedure that will be used for writing documents ( if the sproc already exists, use it, otherwise create a new one.
+     * Gets the partition key ranges of a collection. A collection that is not partitioned has a single range.
+     * @param client The DocumentClient instance.
+     * @param collectionSelfLink the self link of the collection.
+     * @return the list of partition key ranges of the collection.
+     */
+    public static List<PartitionKeyRange> getPartitionKeyRanges(DocumentClient client, String collectionSelfLink) {
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        List<PartitionKeyRange> ranges = null;
+        while(retryPolicy.shouldRetry()){
+            try {
+                ranges = client.readPartitionKeyRanges(collectionSelfLink, (FeedOptions) null).getQueryIterable().toList();
+                break;
+            } catch (Exception e) {
+                retryPolicy.errorOccured(e);
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Gets the resource usage of a collection, e.g. documentsCount and documentsSize (in KB).
+     * @param client The DocumentClient instance.
+     * @param collectionSelfLink the self link of the collection.
+     * @return a map from the name of a usage counter to its value, empty if the usage couldn't be read.
+     */
+    public static Map<String, Long> getCollectionUsage(DocumentClient client, String collectionSelfLink) {
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        RequestOptions options = new RequestOptions();
+        options.setPopulateQuotaInfo(true);
+        String usage = null;
+        while(retryPolicy.shouldRetry()){
+            try {
+                usage = client.readCollection(collectionSelfLink, options).getCurrentResourceQuotaUsage();
+                break;
+            } catch (Exception e) {
+                retryPolicy.errorOccured(e);
+            }
+        }
+
+        // The usage is formatted as name1=value1;name2=value2...
+        Map<String, Long> counters = new HashMap<String, Long>();
+        if (usage == null) {
+            return counters;
+        }
+
+        for (String counter : usage.split(";")) {
+            String[] nameValue = counter.split("=");
+            if (nameValue.length == 2) {
+                try {
+                    counters.put(nameValue[0].trim(), Long.parseLong(nameValue[1].trim()));
+                } catch (NumberFormatException e) {
+                    LOG.debug("Ignoring resource usage counter " + counter);
+                }
+            }
+        }
+
+        return counters;
+    }
+
+    /**
+     * Gets the bulk import stored procedure that will be used for writing documents. If the sproc already exists and
+     * its body is the script shipped with the connector, use it. If its body is stale, replace it, otherwise create a
+     * new one.
      * @param client the DocumentClient instance for DocumentDB.
      * @param collectionLink the self-link of the collection to write to.
      * @return StoredProcedure instance that will be used for writing
      */
     public static StoredProcedure CreateBulkImportStoredProcedure(DocumentClient client, String collectionLink)
             throws DocumentClientException {
+        String cacheKey = collectionLink + "/sprocs/" + BULK_IMPORT_ID;
+        StoredProcedure cachedSproc = DocumentDBMetadataCache.get(client, cacheKey, StoredProcedure.class);
+        if (cachedSproc != null) {
+            return cachedSproc;
+        }
+
         BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
         List<StoredProcedure> sprocs = null;
         
@@ -183,15 +307,119 @@ public class DocumentDBConnectorUtil {
             }
         }
         
+        String sprocBody = getBulkImportBody(client);
         if(sprocs.size() > 0) {
-            return sprocs.get(0);
+            StoredProcedure sproc = sprocs.get(0);
+            if (!sprocBody.equals(sproc.getBody())) {
+                LOG.info(String.format("Replacing the stale stored procedure %s of %s", BULK_IMPORT_ID,
+                        collectionLink));
+                sproc.setBody(sprocBody);
+                retryPolicy = new BackoffExponentialRetryPolicy();
+                while(retryPolicy.shouldRetry()){
+                    try {
+                        sproc = client.replaceStoredProcedure(sproc, null).getResource();
+                        break;
+                    } catch (Exception e) {
+                        retryPolicy.errorOccured(e);
+                    }
+                }
+            }
+
+            DocumentDBMetadataCache.put(client, cacheKey, sproc);
+            return sproc;
         }
         
         StoredProcedure sproc = new StoredProcedure();
         sproc.setId(BULK_IMPORT_ID);
-        String sprocBody = getBulkImportBody(client);
         sproc.setBody(sprocBody);
-        return client.createStoredProcedure(collectionLink, sproc, null).getResource();
+        StoredProcedure createdSproc = null;
+        retryPolicy = new BackoffExponentialRetryPolicy();
+        try {
+            while(retryPolicy.shouldRetry()){
+                try {
+                    createdSproc = client.createStoredProcedure(collectionLink, sproc, null).getResource();
+                    break;
+                } catch (Exception e) {
+                    retryPolicy.errorOccured(e);
+                }
+            }
+        } catch (IllegalStateException e) {
+            if (getStatusCode(e) != CONFLICT_ERROR) {
+                throw e;
+            }
+
+            // Another writer created the stored procedure in the meantime.
+            return CreateBulkImportStoredProcedure(client, collectionLink);
+        }
+
+        DocumentDBMetadataCache.put(client, cacheKey, createdSproc);
+        return createdSproc;
+    }
+
+    /**
+     * Gets or creates the output collections of a job and their bulk import stored procedure, and saves them to the
+     * job configuration, so that the record writers of the job don't have to look them up.
+     * @param conf job configuration object, before the job is submitted.
+     */
+    public static void provisionOutputCollections(Configuration conf) throws IOException {
+        String host = ConfigurationUtil.getDBEndpoint(conf);
+        String dbName = ConfigurationUtil.getDBName(conf);
+        String[] collectionNames = ConfigurationUtil.getOutputCollectionNames(conf);
+        JSONArray collections = new JSONArray();
+        JSONArray sprocs = new JSONArray();
+        try {
+            DocumentClient client = DocumentDBClientPool.getClient(host, ConfigurationUtil.getDBKey(conf));
+            Database db = GetDatabase(client, dbName);
+            if (db == null) {
+                throw new IOException(String.format("database %s doesn't exist", dbName));
+            }
+
+            for (String collectionName : collectionNames) {
+                DocumentCollection collection = getOrCreateOutputCollection(client, db.getSelfLink(),
+                        collectionName, ConfigurationUtil.getOutputStringPrecision(conf),
+                        ConfigurationUtil.getOutputCollectionsOffer(conf));
+                StoredProcedure sproc = CreateBulkImportStoredProcedure(client, collection.getSelfLink());
+                collections.put(new JSONObject(collection.toString()));
+                sprocs.put(new JSONObject(sproc.toString()));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        JSONObject provisionedOutput = new JSONObject();
+        provisionedOutput.put("signature", getProvisionedOutputSignature(host, dbName, collectionNames));
+        provisionedOutput.put("collections", collections);
+        provisionedOutput.put("sprocs", sprocs);
+        conf.set(ConfigurationUtil.PROVISIONED_OUTPUT, provisionedOutput.toString());
+        LOG.info(String.format("Provisioned the output collections %s", StringUtils.join(collectionNames, ",")));
+    }
+
+    /**
+     * Gets the output collections and stored procedures provisioned when the job was submitted.
+     * @param conf job configuration object.
+     * @return the collections in "collections" and the stored procedures in "sprocs", in the order of the collection
+     * names, or null if the output of the job wasn't provisioned for these collections.
+     */
+    public static JSONObject getProvisionedOutput(Configuration conf, String host, String dbName,
+            String[] collectionNames) {
+        String value = conf.get(ConfigurationUtil.PROVISIONED_OUTPUT);
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+
+        JSONObject provisionedOutput = new JSONObject(value);
+        if (!getProvisionedOutputSignature(host, dbName, collectionNames).equals(
+                provisionedOutput.optString("signature"))) {
+            return null;
+        }
+
+        return provisionedOutput;
+    }
+
+    private static String getProvisionedOutputSignature(String host, String dbName, String[] collectionNames) {
+        return host + "|" + dbName + "|" + StringUtils.join(collectionNames, ",");
     }
 
     /**
@@ -205,59 +433,193 @@ public class DocumentDBConnectorUtil {
      */
     public static void executeWriteStoredProcedure(final DocumentClient client, String collectionSelfLink, final StoredProcedure sproc,
             List<Document> allDocs, final boolean upsert) {
-        
+        DocumentDBDocumentBatch batch = new DocumentDBDocumentBatch(MAX_SCRIPT_DOCS, MAX_SCRIPT_SIZE);
+        for (Document doc : allDocs) {
+            String json = doc.toString();
+            if (!batch.add(doc, json)) {
+                executeWriteStoredProcedure(client, sproc, batch.getJsonDocuments(), upsert);
+                batch = new DocumentDBDocumentBatch(MAX_SCRIPT_DOCS, MAX_SCRIPT_SIZE);
+                batch.add(doc, json);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            executeWriteStoredProcedure(client, sproc, batch.getJsonDocuments(), upsert);
+        }
+    }
+
+    /**
+     * Executes the bulk import stored procedure for a list of serialized documents. The documents the stored
+     * procedure didn't write before reaching its execution limits are sent again, without serializing them again.
+     * @param client The DocumentClient instance for DocumentDB
+     * @param sproc The stored procedure to execute
+     * @param jsonDocuments The serialized documents to write, sized to fit in one request.
+     * @param upsert  Specifies whether to replace the document if exists or not. By default it's true.
+     */
+    public static void executeWriteStoredProcedure(final DocumentClient client, final StoredProcedure sproc,
+            List<String> jsonDocuments, final boolean upsert) {
+        executeWriteStoredProcedure(client, sproc, jsonDocuments, upsert, null);
+    }
+
+    /**
+     * Executes the bulk import stored procedure for a list of serialized documents sharing a partition key value.
+     * @param client The DocumentClient instance for DocumentDB
+     * @param sproc The stored procedure to execute
+     * @param jsonDocuments The serialized documents to write, sized to fit in one request.
+     * @param upsert  Specifies whether to replace the document if exists or not. By default it's true.
+     * @param partitionKeyValue the partition key value of the documents, null for non partitioned collections.
+     */
+    public static void executeWriteStoredProcedure(final DocumentClient client, final StoredProcedure sproc,
+            List<String> jsonDocuments, final boolean upsert, Object partitionKeyValue) {
+        executeWriteStoredProcedure(client, sproc, jsonDocuments, upsert, partitionKeyValue, false, null);
+    }
+
+    /**
+     * Executes the bulk import stored procedure for a list of serialized documents sharing a partition key value.
+     * When continueOnError is true, the stored procedure skips the documents it fails to write and reports them.
+     * @param client The DocumentClient instance for DocumentDB
+     * @param sproc The stored procedure to execute
+     * @param jsonDocuments The serialized documents to write, sized to fit in one request.
+     * @param upsert  Specifies whether to replace the document if exists or not. By default it's true.
+     * @param partitionKeyValue the partition key value of the documents, null for non partitioned collections.
+     * @param continueOnError Specifies whether to skip the documents that fail to be written.
+     * @param requestLimiter the request limiter of the task, null to send the requests right away.
+     * @return the documents that failed to be written, each with the "index" of the document in jsonDocuments, and
+     * the status "code" and "message" of its error.
+     * @throws PartialWriteException if a request failed, with the number of documents processed before it.
+     */
+    public static List<JSONObject> executeWriteStoredProcedure(final DocumentClient client,
+            final StoredProcedure sproc, List<String> jsonDocuments, final boolean upsert, Object partitionKeyValue,
+            final boolean continueOnError, DocumentDBRequestLimiter requestLimiter) {
+        RequestOptions options = null;
+        if (partitionKeyValue != null) {
+            options = new RequestOptions();
+            options.setPartitionKey(new PartitionKey(partitionKeyValue));
+        }
+
+        List<JSONObject> failures = new ArrayList<JSONObject>();
         int currentCount = 0;
-            
-        while (currentCount < allDocs.size())
-            {
-            String []jsonArrayString = CreateBulkInsertScriptArguments(allDocs, currentCount, MAX_SCRIPT_SIZE);
+        while (currentCount < jsonDocuments.size()) {
+            String[] jsonArrayString = jsonDocuments.subList(currentCount, jsonDocuments.size())
+                    .toArray(new String[0]);
             BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
             String response = null;
             while(retryPolicy.shouldRetry()){
                 try {
-                    response = client.executeStoredProcedure(sproc.getSelfLink(), new Object[] { jsonArrayString, upsert })
-                        .getResponseAsString();
+                    if (requestLimiter != null) {
+                        requestLimiter.acquire();
+                    }
+
+                    StoredProcedureResponse sprocResponse = client.executeStoredProcedure(sproc.getSelfLink(),
+                            options, new Object[] { jsonArrayString, upsert, continueOnError });
+                    if (requestLimiter != null) {
+                        requestLimiter.charge(sprocResponse.getRequestCharge());
+                    }
+
+                    response = sprocResponse.getResponseAsString();
                     break;
                 } catch(Exception e){
-                    retryPolicy.errorOccured(e);  
+                    try {
+                        retryPolicy.errorOccured(e);
+                    } catch (IllegalStateException error) {
+                        throw new PartialWriteException(error, currentCount, failures);
+                    }
                 }
             }
-    
-            int createdCount = Integer.parseInt(response);
-            currentCount += createdCount;
+
+            // The stored procedure reports how many documents it processed before reaching its execution limits,
+            // and the documents it failed to write, indexed from the first document sent.
+            JSONObject result = new JSONObject(response);
+            JSONArray failed = result.optJSONArray("failed");
+            for (int i = 0; failed != null && i < failed.length(); i++) {
+                JSONObject failure = failed.getJSONObject(i);
+                failure.put("index", currentCount + failure.getInt("index"));
+                failures.add(failure);
+            }
+
+            currentCount += result.getInt("count");
         }
+
+        return failures;
     }
 
     /**
-     * 
-     * @param docs The list of documents to be created 
-     * @param currentIndex the current index in the list of docs to start with.
-     * @param maxCount the max count to be created by the sproc.
-     * @param maxScriptSize the max size of the sproc that is used to avoid exceeding the max request size.
-     * @return a string array for all documents to be created
+     * Thrown by executeWriteStoredProcedure when a request failed, after the earlier requests processed some of the
+     * documents. The error has the cause of the error thrown by the retry policy, so that getStatusCode finds the
+     * status code of the request.
      */
-    private static String[] CreateBulkInsertScriptArguments(List<Document> docs, int currentIndex, int maxScriptSize)
-    {
-        if (currentIndex >= docs.size()) return new String[]{};
-        
-        ArrayList<String> jsonDocumentList = new ArrayList<String>();
-        String stringifiedDoc;
-        int scriptCapacityRemaining = maxScriptSize;
-
-        int i = 0;
-        while (scriptCapacityRemaining > 0 && i < MAX_SCRIPT_DOCS && currentIndex + i < docs.size())
-        {
-            stringifiedDoc = docs.get(currentIndex + i).toString();
-            jsonDocumentList.add(stringifiedDoc);
-            scriptCapacityRemaining-= stringifiedDoc.length();
-            i++;
+    public static class PartialWriteException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final int processedCount;
+        private final List<JSONObject> failures;
+
+        private PartialWriteException(IllegalStateException error, int processedCount, List<JSONObject> failures) {
+            super(error.getMessage(), error.getCause());
+            this.processedCount = processedCount;
+            this.failures = failures;
         }
 
-        String[] jsonDocumentArray = new String[jsonDocumentList.size()];
-        jsonDocumentList.toArray(jsonDocumentArray);
-        return jsonDocumentArray;
+        /**
+         * @return the number of documents processed by the earlier requests, the index of the first document of the
+         * failed request.
+         */
+        public int getProcessedCount() {
+            return this.processedCount;
+        }
+
+        /**
+         * @return the documents that failed to be written by the earlier requests, as returned by
+         * executeWriteStoredProcedure.
+         */
+        public List<JSONObject> getFailures() {
+            return this.failures;
+        }
     }
-    
+
+    /**
+     * Gets the status code of a failed request.
+     * @param e the exception thrown by the request, or by the retry policy.
+     * @return the status code, or -1 if the exception isn't a documentdb error.
+     */
+    public static int getStatusCode(Throwable e) {
+        if (e instanceof IllegalStateException && e.getCause() != null) {
+            e = e.getCause();
+        }
+
+        return e instanceof DocumentClientException ? ((DocumentClientException) e).getStatusCode() : -1;
+    }
+
+    /**
+     * Gets the value of a document's partition key.
+     * @param collection the partitioned collection the document is written to.
+     * @param doc the document.
+     * @return the string, number or boolean value of the partition key, or null if the document doesn't have one.
+     */
+    public static Object getPartitionKeyValue(DocumentCollection collection, Document doc) {
+        String path = collection.getPartitionKey().getPaths().iterator().next();
+        Object value = doc;
+        for (String property : StringUtils.split(path, '/')) {
+            if (property.length() > 1 && property.startsWith("\"") && property.endsWith("\"")) {
+                property = property.substring(1, property.length() - 1);
+            }
+
+            if (value instanceof Document) {
+                value = ((Document) value).get(property);
+            } else if (value instanceof JSONObject) {
+                value = ((JSONObject) value).opt(property);
+            } else {
+                return null;
+            }
+        }
+
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+
+        return null;
+    }
+
     /**
      * Reads the bulk import script body from the file.
      * @param client the DocumentClient instance.
@@ -279,6 +641,10 @@ public class DocumentDBConnectorUtil {
         }
     }
 
+    private static String getCollectionCacheKey(String databaseSelfLink, String collectionId) {
+        return databaseSelfLink + "/colls/" + collectionId;
+    }
+
     /**
      * If no id is provided, replace it with an auto generated guid id.
      * @param doc The document to be checked for id.
@@ -0,0 +1,78 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.json.JSONObject;
+
+/**
+ * Saves the documents that failed to be written to a file of the task attempt under DocumentDB.deadLetterDir, one
+ * JSON line per document with the status code and the message of its error. The file is only created once a
+ * document fails to be written.
+ */
+public class DocumentDBDeadLetterWriter {
+    private static final Log LOG = LogFactory.getLog(DocumentDBDeadLetterWriter.class);
+
+    private final Configuration conf;
+    private final Path file;
+    private FSDataOutputStream out;
+
+    private DocumentDBDeadLetterWriter(Configuration conf, Path file) {
+        this.conf = conf;
+        this.file = file;
+    }
+
+    /**
+     * Creates the dead letter writer of a task attempt.
+     * @param conf job configuration object of the task attempt.
+     * @return the dead letter writer, or null if DocumentDB.deadLetterDir isn't set.
+     */
+    public static DocumentDBDeadLetterWriter create(Configuration conf) {
+        String deadLetterDir = ConfigurationUtil.getDeadLetterDir(conf);
+        if (deadLetterDir == null) {
+            return null;
+        }
+
+        String attemptId = conf.get(ConfigurationUtil.TASK_ATTEMPT_ID);
+        if (attemptId == null) {
+            attemptId = UUID.randomUUID().toString();
+        }
+
+        return new DocumentDBDeadLetterWriter(conf, new Path(deadLetterDir, attemptId));
+    }
+
+    /**
+     * Saves a document that failed to be written.
+     * @param json the serialized document.
+     * @param statusCode the status code of the error, -1 if it is unknown.
+     * @param message the message of the error.
+     */
+    public synchronized void write(String json, int statusCode, String message) throws IOException {
+        if (this.out == null) {
+            FileSystem fs = this.file.getFileSystem(this.conf);
+            this.out = fs.create(this.file, true);
+            LOG.info(String.format("Saving the documents that failed to be written to %s", this.file));
+        }
+
+        String line = String.format("{\"code\":%d,\"message\":%s,\"document\":%s}\n", statusCode,
+                JSONObject.quote(message), json);
+        this.out.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void close() throws IOException {
+        if (this.out != null) {
+            this.out.close();
+            this.out = null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * A batch of documents for the bulk import stored procedure. Every document is serialized to JSON once when it is
+ * added, and the batch is packed up to a number of documents and to the size of the stored procedure's parameters
+ * in the request body. Retries of the documents a stored procedure didn't write reuse the serialized documents.
+ */
+public class DocumentDBDocumentBatch {
+    private final int maxDocuments;
+    private final long maxBytes;
+    private final List<Document> documents;
+    private final List<String> jsonDocuments;
+    private long bytes;
+
+    /**
+     * @param maxDocuments the maximum number of documents in the batch.
+     * @param maxBytes the maximum size in bytes of the documents in the request body.
+     */
+    public DocumentDBDocumentBatch(int maxDocuments, long maxBytes) {
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+        this.documents = new ArrayList<Document>(maxDocuments);
+        this.jsonDocuments = new ArrayList<String>(maxDocuments);
+    }
+
+    /**
+     * Adds a document if the batch has room for it. An empty batch always accepts a document, so that documents
+     * larger than maxBytes are sent on their own and rejected by documentdb.
+     * @param doc the document.
+     * @param json the serialized document.
+     * @return true if the document was added, false if the batch is full.
+     */
+    public boolean add(Document doc, String json) {
+        long size = getEncodedSize(json);
+        if (!this.isEmpty() && (this.documents.size() >= this.maxDocuments || this.bytes + size > this.maxBytes)) {
+            return false;
+        }
+
+        this.documents.add(doc);
+        this.jsonDocuments.add(json);
+        this.bytes += size;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return this.documents.isEmpty();
+    }
+
+    public boolean isFull() {
+        return this.documents.size() >= this.maxDocuments || this.bytes >= this.maxBytes;
+    }
+
+    public int size() {
+        return this.documents.size();
+    }
+
+    public List<Document> getDocuments() {
+        return this.documents;
+    }
+
+    /**
+     * @return the serialized documents, in the order of getDocuments.
+     */
+    public List<String> getJsonDocuments() {
+        return this.jsonDocuments;
+    }
+
+    /**
+     * @return the size in bytes of the documents in the request body.
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Computes the size of a serialized document once it is encoded as a JSON string parameter of the stored
+     * procedure: quotes, backslashes and control characters are escaped and the request is encoded in UTF-8.
+     * @param json the serialized document.
+     * @return the size in bytes.
+     */
+    public static long getEncodedSize(String json) {
+        long size = 2;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"' || c == '\\' || c == '\b' || c == '\f' || c == '\n' || c == '\r' || c == '\t') {
+                size += 2;
+            } else if (c < 0x20) {
+                size += 6;
+            } else if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < json.length()
+                    && Character.isLowSurrogate(json.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+
+        return size + 1;
+    }
+}
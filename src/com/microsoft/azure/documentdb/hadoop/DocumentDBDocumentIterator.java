@@ -0,0 +1,215 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * Iterates over the documents of a query one page at a time. When prefetching is enabled, a background thread
+ * fetches the next pages into a bounded queue while the current page is consumed by the mapper. Errors of the
+ * background thread are thrown on the thread that consumes the documents. When a read checkpoint is given, the
+ * position of the iterator is saved every few pages and the iteration starts from the position of the checkpoint.
+ */
+public class DocumentDBDocumentIterator implements Iterator<Document>, Closeable {
+    private static final Log LOG = LogFactory.getLog(DocumentDBDocumentIterator.class);
+    private static final Object END_OF_RESULTS = new Object();
+    private static final long ENQUEUE_POLL_MILLISECONDS = 100;
+
+    private final DocumentDBPageFetcher fetcher;
+    private final DocumentDBReadCheckpoint checkpoint;
+    private final int checkpointInterval;
+    private final long resumedDocumentCount;
+    private BlockingQueue<Object> prefetchedPages;
+    private Thread prefetchThread;
+    private DocumentDBPageFetcher.Page currentPage;
+    private Iterator<Document> currentDocuments;
+    private long documentsReturned;
+    private int pagesSinceCheckpoint;
+    private boolean finished;
+    private volatile boolean closed;
+
+    /**
+     * Creates an iterator over the pages fetched by a DocumentDBPageFetcher.
+     * @param fetcher the page fetcher of the query.
+     * @param prefetchPages the number of pages to fetch ahead in the background, 0 disables prefetching.
+     */
+    public DocumentDBDocumentIterator(DocumentDBPageFetcher fetcher, int prefetchPages) {
+        this(fetcher, prefetchPages, null, 0, 0);
+    }
+
+    /**
+     * Creates an iterator over the pages fetched by a DocumentDBPageFetcher that saves its position to a checkpoint.
+     * @param fetcher the page fetcher of the query, positioned at the continuation of the checkpoint if resuming.
+     * @param prefetchPages the number of pages to fetch ahead in the background, 0 disables prefetching.
+     * @param checkpoint the checkpoint to save the position to, null disables checkpointing.
+     * @param checkpointInterval the number of pages read between two checkpoints.
+     * @param resumedDocumentCount the number of documents read before the position of the fetcher.
+     */
+    public DocumentDBDocumentIterator(DocumentDBPageFetcher fetcher, int prefetchPages,
+            DocumentDBReadCheckpoint checkpoint, int checkpointInterval, long resumedDocumentCount) {
+        this.fetcher = fetcher;
+        this.checkpoint = checkpoint;
+        this.checkpointInterval = checkpointInterval;
+        this.resumedDocumentCount = resumedDocumentCount;
+        this.documentsReturned = resumedDocumentCount;
+        if (prefetchPages > 0) {
+            this.prefetchedPages = new ArrayBlockingQueue<Object>(prefetchPages);
+            this.prefetchThread = new Thread(new Prefetcher(), "DocumentDB page prefetcher");
+            this.prefetchThread.setDaemon(true);
+            this.prefetchThread.start();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext() {
+        while (this.currentDocuments == null || !this.currentDocuments.hasNext()) {
+            if (this.finished) {
+                return false;
+            }
+
+            if (this.currentPage != null) {
+                this.onPageConsumed(this.currentPage);
+            }
+
+            DocumentDBPageFetcher.Page page = this.nextPage();
+            if (page == null) {
+                this.finished = true;
+                return false;
+            }
+
+            this.currentPage = page;
+            this.currentDocuments = page.getDocuments().iterator();
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Document next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.documentsReturned++;
+        return this.currentDocuments.next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the number of documents skipped by resuming from a checkpoint.
+     */
+    public long getResumedDocumentCount() {
+        return this.resumedDocumentCount;
+    }
+
+    /**
+     * Stops the background prefetching and closes the page fetcher.
+     */
+    public void close() {
+        this.finished = true;
+        this.closed = true;
+        if (this.prefetchThread != null) {
+            this.prefetchThread.interrupt();
+        }
+
+        this.fetcher.close();
+    }
+
+    /**
+     * Saves a checkpoint every checkpointInterval pages, once all the documents of the page have been returned. It
+     * runs on the thread consuming the documents, so the records of the page have been processed and written.
+     */
+    private void onPageConsumed(DocumentDBPageFetcher.Page page) {
+        if (this.checkpoint == null || page.getContinuation() == null) {
+            return;
+        }
+
+        if (++this.pagesSinceCheckpoint >= this.checkpointInterval) {
+            this.checkpoint.save(page.getContinuation(), this.documentsReturned);
+            this.pagesSinceCheckpoint = 0;
+        }
+    }
+
+    private DocumentDBPageFetcher.Page nextPage() {
+        if (this.prefetchedPages == null) {
+            return this.fetcher.fetchNextPage();
+        }
+
+        Object page;
+        try {
+            page = this.prefetchedPages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next page of documents.", e);
+        }
+
+        if (page == END_OF_RESULTS) {
+            return null;
+        } else if (page instanceof RuntimeException) {
+            this.finished = true;
+            throw (RuntimeException) page;
+        } else if (page instanceof Throwable) {
+            this.finished = true;
+            throw new IllegalStateException((Throwable) page);
+        }
+
+        return (DocumentDBPageFetcher.Page) page;
+    }
+
+    /**
+     * Fetches pages into the bounded queue until the results are exhausted or the iterator is closed.
+     */
+    private class Prefetcher implements Runnable {
+        public void run() {
+            try {
+                DocumentDBPageFetcher.Page page;
+                while (!closed && (page = fetcher.fetchNextPage()) != null) {
+                    this.enqueue(page);
+                }
+
+                this.enqueue(END_OF_RESULTS);
+            } catch (InterruptedException e) {
+                LOG.debug("Page prefetching stopped.");
+            } catch (Throwable t) {
+                try {
+                    this.enqueue(t);
+                } catch (InterruptedException e) {
+                    LOG.debug("Page prefetching stopped.");
+                }
+            }
+        }
+
+        /**
+         * Waits for room in the queue. The retry policy swallows interrupts while backing off,
+         * so the closed flag is checked as well.
+         */
+        private void enqueue(Object item) throws InterruptedException {
+            while (!closed) {
+                if (prefetchedPages.offer(item, ENQUEUE_POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+    }
+}
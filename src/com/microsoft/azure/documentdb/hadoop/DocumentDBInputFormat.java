@@ -30,7 +30,7 @@ public class DocumentDBInputFormat extends InputFormat<LongWritable, DocumentDBW
     @Override
     public RecordReader<LongWritable, DocumentDBWritable> createRecordReader(InputSplit split,
             TaskAttemptContext context) throws IOException, InterruptedException {
-        return new DocumentDBRecordReader((DocumentDBInputSplit) split);
+        return new DocumentDBRecordReader((DocumentDBInputSplit) split, context.getConfiguration());
     }
 
     /**
@@ -6,10 +6,11 @@ package com.microsoft.azure.documentdb.hadoop;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -18,29 +19,34 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.InputSplit;
 
-import com.microsoft.azure.documentdb.ConnectionPolicy;
-import com.microsoft.azure.documentdb.ConsistencyLevel;
 import com.microsoft.azure.documentdb.Database;
 import com.microsoft.azure.documentdb.Document;
 import com.microsoft.azure.documentdb.DocumentClient;
 import com.microsoft.azure.documentdb.DocumentCollection;
 import com.microsoft.azure.documentdb.FeedOptions;
-import com.microsoft.azure.documentdb.QueryIterable;
-import com.microsoft.azure.documentdb.SqlParameter;
-import com.microsoft.azure.documentdb.SqlParameterCollection;
-import com.microsoft.azure.documentdb.SqlQuerySpec;
+import com.microsoft.azure.documentdb.PartitionKeyRange;
 
 /**
- * An input split that represents one collection from documentdb. It reads data one page at a time and
- * sends one by one document to the mapper.
+ * An input split that represents one partition key range of a collection from documentdb. It reads data one page
+ * at a time and sends one by one document to the mapper.
  * In order to be able to use it, you need to set the required configuration properties for the input split. 
  */
 public class DocumentDBInputSplit extends InputSplit implements Writable, org.apache.hadoop.mapred.InputSplit {
 
     private static final Log LOG = LogFactory.getLog(DocumentDBWritable.class);
-    private final int MAX_PAGE_SIZE = 700;
-    private Text host, key, dbName, collName, query;
-    private Iterator<Document> documentIterator;
+    private static final float MAX_UNFINISHED_PROGRESS = 0.99f;
+    private static final long UNKNOWN_SIZE = -1;
+    private static final String DOCUMENTS_COUNT_USAGE = "documentsCount";
+    private static final String DOCUMENTS_SIZE_USAGE = "documentsSize";
+
+    /**
+     * The alias of the documents in the queries probing the bounds of the split field.
+     */
+    private static final String BOUND_QUERY_ALIAS = "r";
+    private Text host, key, dbName, collName, query, partitionKeyRangeId;
+    private long estimatedDocumentCount = UNKNOWN_SIZE;
+    private long estimatedLength = UNKNOWN_SIZE;
+    private DocumentDBDocumentIterator documentIterator;
 
     public DocumentDBInputSplit() {
         this.host = new Text();
@@ -48,9 +54,15 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         this.dbName = new Text();
         this.collName = new Text();
         this.query = new Text();
+        this.partitionKeyRangeId = new Text();
     }
 
     public DocumentDBInputSplit(String host, String key, String dbName, String collName, String query) {
+        this(host, key, dbName, collName, query, null);
+    }
+
+    public DocumentDBInputSplit(String host, String key, String dbName, String collName, String query,
+            String partitionKeyRangeId) {
         this.host = new Text(host);
         this.key = new Text(key);
         this.dbName = new Text(dbName);
@@ -60,28 +72,249 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         }
 
         this.query = new Text(query);
+
+        // An empty partition key range id means the split reads the whole collection.
+        if (partitionKeyRangeId == null) {
+            partitionKeyRangeId = "";
+        }
+
+        this.partitionKeyRangeId = new Text(partitionKeyRangeId);
     }
 
     /**
-     * Gets the list of DocumentDBInputSplit used.
+     * Gets the list of DocumentDBInputSplit used. One split is created for every partition key range
+     * of every input collection so that the reads scale with the number of physical partitions.
      */
     public static List<InputSplit> getSplits(Configuration conf, String dbHost, String dbKey, String dbName,
-            String[] collNames, String query) {
-        int internalNumSplits = collNames.length;
+            String[] collNames, String query) throws IOException {
         List<InputSplit> splits = new LinkedList<InputSplit>();
-        for (int i = 0; i < internalNumSplits; i++) {
-            splits.add(new DocumentDBInputSplit(dbHost, dbKey, dbName, collNames[i].trim(), query));
+        int splitsPerCollection = ConfigurationUtil.getSplitsPerCollection(conf);
+        String splitField = ConfigurationUtil.getSplitField(conf);
+        try {
+            DocumentClient client = DocumentDBClientPool.getClient(dbHost, dbKey);
+            DocumentDBWatermarks watermarks = DocumentDBWatermarks.load(conf);
+
+            Database db = DocumentDBConnectorUtil.GetDatabase(client, dbName);
+            if (db == null) {
+                throw new IOException(String.format("Database %s doesn't exist", dbName));
+            }
+
+            for (int i = 0; i < collNames.length; i++) {
+                String collName = collNames[i].trim();
+                DocumentCollection coll = DocumentDBConnectorUtil.GetDocumentCollection(client, db.getSelfLink(),
+                        collName);
+                if (coll == null) {
+                    throw new IOException(String.format("collection %s doesn't exist", collName));
+                }
+
+                List<PartitionKeyRange> ranges = DocumentDBConnectorUtil.getPartitionKeyRanges(client,
+                        coll.getSelfLink());
+                LOG.info(String.format("collection %s has %d partition key ranges", collName, ranges.size()));
+
+                // Cut each partition key range into sub-ranges when the collection doesn't have enough ranges.
+                int subRangesPerRange = (splitsPerCollection + ranges.size() - 1) / ranges.size();
+                List<DocumentDBInputSplit> collectionSplits = new ArrayList<DocumentDBInputSplit>();
+                for (PartitionKeyRange range : ranges) {
+                    String rangeQuery = query;
+                    String boundsFilter = null;
+                    Double lowerBound = null;
+                    Double upperBound = null;
+                    if (watermarks != null) {
+                        // Incremental reads only read the documents modified since the range's watermark.
+                        String collectionKey = dbName + "/" + collName;
+                        Double maxTimestamp = getSplitFieldBound(client, coll.getSelfLink(), range.getId(),
+                                ConfigurationUtil.DEFAULT_SPLIT_FIELD, null, "DESC");
+                        rangeQuery = QueryUtil.addFilter(query, watermarks.getFilter(QueryUtil.getRootAlias(query),
+                                collectionKey, range.getId(), maxTimestamp));
+
+                        // The sub-ranges are cut among the documents read, not the whole range.
+                        if (splitField.equals(ConfigurationUtil.DEFAULT_SPLIT_FIELD)) {
+                            Long watermark = watermarks.getRangeWatermark(collectionKey, range.getId());
+                            lowerBound = watermark != null ? watermark.doubleValue() : null;
+                            upperBound = maxTimestamp;
+                        } else {
+                            boundsFilter = watermarks.getPendingFilter(BOUND_QUERY_ALIAS, collectionKey,
+                                    range.getId());
+                        }
+                    }
+
+                    List<String> filters = getSplitFieldFilters(client, coll.getSelfLink(), range.getId(),
+                            rangeQuery, splitField, subRangesPerRange, boundsFilter, lowerBound, upperBound);
+                    for (String filter : filters) {
+                        String splitQuery = filter == null ? rangeQuery : QueryUtil.addFilter(rangeQuery, filter);
+                        collectionSplits.add(new DocumentDBInputSplit(dbHost, dbKey, dbName, collName, splitQuery,
+                                range.getId()));
+                    }
+                }
+
+                // The collection's documents are assumed to be spread evenly over its splits.
+                Map<String, Long> usage = DocumentDBConnectorUtil.getCollectionUsage(client, coll.getSelfLink());
+                Long documentsCount = usage.get(DOCUMENTS_COUNT_USAGE);
+                Long documentsSizeInKB = usage.get(DOCUMENTS_SIZE_USAGE);
+                for (DocumentDBInputSplit split : collectionSplits) {
+                    if (documentsCount != null && documentsSizeInKB != null) {
+                        split.estimatedDocumentCount = documentsCount / collectionSplits.size();
+                        split.estimatedLength = documentsSizeInKB * 1024 / collectionSplits.size();
+                    }
+
+                    splits.add(split);
+                }
+            }
+
+            if (watermarks != null) {
+                watermarks.savePending(conf);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
         }
-        
+
         return splits;
     }
 
     /**
-     * @inheritDoc
+     * Cuts a partition key range into sub-ranges on a numeric property by probing the property's minimum and maximum.
+     * The filters returned cover every document of the range exactly once, documents where the property isn't a
+     * number are read by the first sub-range.
+     * @param boundsFilter a filter on the documents of the range probed for the minimum and maximum, using the
+     *        BOUND_QUERY_ALIAS alias, or null to probe the whole range.
+     * @param lowerBound the minimum of the property if it is already known, or null to probe it.
+     * @param upperBound the maximum of the property if it is already known, or null to probe it.
+     * @return the filters of the sub-ranges, or a single null filter if the range isn't cut.
+     */
+    private static List<String> getSplitFieldFilters(DocumentClient client, String collectionLink,
+            String partitionKeyRangeId, String query, String splitField, int subRanges, String boundsFilter,
+            Double lowerBound, Double upperBound) {
+        List<String> filters = new ArrayList<String>();
+        if (subRanges <= 1) {
+            filters.add(null);
+            return filters;
+        }
+
+        String alias;
+        try {
+            alias = QueryUtil.getRootAlias(query);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Cannot cut the partition key ranges into sub-ranges: " + e.getMessage());
+            filters.add(null);
+            return filters;
+        }
+
+        Double min = lowerBound != null ? lowerBound
+                : getSplitFieldBound(client, collectionLink, partitionKeyRangeId, splitField, boundsFilter, "ASC");
+        Double max = upperBound != null ? upperBound
+                : getSplitFieldBound(client, collectionLink, partitionKeyRangeId, splitField, boundsFilter, "DESC");
+        if (min == null || max == null || min >= max) {
+            filters.add(null);
+            return filters;
+        }
+
+        // Integral fields like _ts are cut on integral boundaries.
+        boolean integral = min == Math.rint(min) && max == Math.rint(max);
+        List<Double> boundaries = new ArrayList<Double>();
+        for (int i = 1; i < subRanges; i++) {
+            double boundary = min + (max - min) * i / subRanges;
+            if (integral) {
+                boundary = Math.ceil(boundary);
+            }
+
+            if (boundary > min && (boundaries.isEmpty() || boundary > boundaries.get(boundaries.size() - 1))) {
+                boundaries.add(boundary);
+            }
+        }
+
+        String property = QueryUtil.getPropertyExpression(alias, splitField);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            StringBuilder filter = new StringBuilder();
+            if (i > 0) {
+                filter.append(String.format("%s >= %s", property, QueryUtil.toNumberLiteral(boundaries.get(i - 1))));
+            }
+
+            if (i < boundaries.size()) {
+                if (i > 0) {
+                    filter.append(" AND ");
+                }
+
+                filter.append(String.format("%s < %s", property, QueryUtil.toNumberLiteral(boundaries.get(i))));
+                if (i == 0 && !splitField.equals(ConfigurationUtil.DEFAULT_SPLIT_FIELD)) {
+                    // _ts is always a number, any other property might be missing or of another type.
+                    filter.insert(0, String.format("NOT IS_NUMBER(%s) OR ", property));
+                }
+            }
+
+            filters.add(filter.toString());
+        }
+
+        LOG.info(String.format("cut partition key range %s into %d sub-ranges on %s", partitionKeyRangeId,
+                filters.size(), splitField));
+        return filters;
+    }
+
+    /**
+     * Gets the minimum or the maximum numeric value of a property in a partition key range.
+     * @param filter a filter on the documents using the BOUND_QUERY_ALIAS alias, or null for all the documents.
+     * @param order ASC for the minimum, DESC for the maximum.
+     * @return the bound or null if no document has a numeric value for the property.
+     */
+    private static Double getSplitFieldBound(DocumentClient client, String collectionLink,
+            String partitionKeyRangeId, String splitField, String filter, String order) {
+        String property = QueryUtil.getPropertyExpression(BOUND_QUERY_ALIAS, splitField);
+        String condition = String.format("IS_NUMBER(%s)", property);
+        if (filter != null) {
+            condition = String.format("%s AND (%s)", condition, filter);
+        }
+
+        String query = String.format("SELECT TOP 1 %s AS v FROM root %s WHERE %s ORDER BY %s %s", property,
+                BOUND_QUERY_ALIAS, condition, property, order);
+        FeedOptions options = new FeedOptions();
+        options.setPartitionKeyRangeIdInternal(partitionKeyRangeId);
+
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        List<Document> results = null;
+        while (retryPolicy.shouldRetry()) {
+            try {
+                results = client.queryDocuments(collectionLink, query, options).getQueryIterable().toList();
+                break;
+            } catch (Exception e) {
+                retryPolicy.errorOccured(e);
+            }
+        }
+
+        if (results.size() == 0 || !(results.get(0).get("v") instanceof Number)) {
+            return null;
+        }
+
+        return ((Number) results.get(0).get("v")).doubleValue();
+    }
+
+    /**
+     * Returns the estimated size in bytes of the documents read by the split.
      */
     @Override
     public long getLength() {
-        return Integer.MAX_VALUE;
+        return this.estimatedLength != UNKNOWN_SIZE ? this.estimatedLength : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the estimated number of documents read by the split, or -1 if it isn't known.
+     */
+    public long getEstimatedDocumentCount() {
+        return this.estimatedDocumentCount;
+    }
+
+    /**
+     * Computes the progress of reading the split from the number of documents read so far.
+     * The progress stays below 1 until the reader runs out of documents since the count is an estimate.
+     * @param documentsProcessed the number of documents read so far.
+     * @return the progress between 0 and 1.
+     */
+    public float getProgress(long documentsProcessed) {
+        if (this.estimatedDocumentCount <= 0) {
+            return 0f;
+        }
+
+        return Math.min((float) documentsProcessed / this.estimatedDocumentCount, MAX_UNFINISHED_PROGRESS);
     }
 
     /**
@@ -98,6 +331,27 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         return this.collName.toString();
     }
 
+    /**
+     * @return the id of the partition key range read by this split, or an empty string for the whole collection.
+     */
+    public String getPartitionKeyRangeId() {
+        return this.partitionKeyRangeId.toString();
+    }
+
+    /**
+     * @return the query read by this split, including the sub-range filters.
+     */
+    public String getQuery() {
+        return this.query.toString();
+    }
+
+    /**
+     * @return a string identifying what this split reads, used to match read checkpoints with the split.
+     */
+    public String getSignature() {
+        return String.format("%s/%s/%s/%s", this.dbName, this.collName, this.partitionKeyRangeId, this.query);
+    }
+
     /**
      * @inheritDoc
      */
@@ -107,6 +361,9 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         this.dbName.readFields(in);
         this.collName.readFields(in);
         this.query.readFields(in);
+        this.partitionKeyRangeId.readFields(in);
+        this.estimatedDocumentCount = in.readLong();
+        this.estimatedLength = in.readLong();
     }
 
     /**
@@ -118,14 +375,27 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         this.dbName.write(out);
         this.collName.write(out);
         this.query.write(out);
+        this.partitionKeyRangeId.write(out);
+        out.writeLong(this.estimatedDocumentCount);
+        out.writeLong(this.estimatedLength);
+    }
+
+    /**
+     * 
+     * @return an Iterator for documents in the collection wrapped by the split.
+     * @throws IOException if a read operation fails on documentdb
+     */
+    public DocumentDBDocumentIterator getDocumentIterator() throws IOException {
+        return this.getDocumentIterator(null);
     }
 
     /**
      * 
+     * @param conf job configuration object, used for the read options.
      * @return an Iterator for documents in the collection wrapped by the split.
      * @throws IOException if a read operation fails on documentdb
      */
-    public Iterator<Document> getDocumentIterator() throws IOException {
+    public DocumentDBDocumentIterator getDocumentIterator(Configuration conf) throws IOException {
         if (this.documentIterator != null)
             return this.documentIterator;
 
@@ -133,11 +403,9 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
         DocumentCollection coll;
         DocumentClient client;
         try {
-            LOG.debug("Connecting to " + this.host + " and reading from collection " + this.collName);
-            ConnectionPolicy policy = ConnectionPolicy.GetDefault();
-            policy.setUserAgentSuffix(DocumentDBConnectorUtil.UserAgentSuffix);
-            client = new DocumentClient(this.host.toString(), this.key.toString(), policy,
-                    ConsistencyLevel.Session);
+            LOG.debug("Connecting to " + this.host + " and reading from collection " + this.collName
+                    + " partition key range " + this.partitionKeyRangeId);
+            client = DocumentDBClientPool.getClient(this.host.toString(), this.key.toString());
             
             db = DocumentDBConnectorUtil.GetDatabase(client, this.dbName.toString());
             if (db == null) {
@@ -149,19 +417,43 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
                 throw new IOException(String.format("collection %s doesn't exist", this.collName));
             }
 
-            String query = this.query.toString();
-            if (query != null && !query.isEmpty()) {
-                query = this.query.toString();
-            } else {
-                query = "select * from root";
-            }
+            String query = QueryUtil.getQueryOrDefault(this.query.toString());
 
             FeedOptions options = new FeedOptions();
-            options.setPageSize(MAX_PAGE_SIZE);
-            this.documentIterator = client.queryDocuments(
-                    coll.getSelfLink(),
-                    query,
-                    options).getQueryIterator();
+            int pageSize = conf != null ? ConfigurationUtil.getPageSize(conf) : ConfigurationUtil.DEFAULT_PAGE_SIZE;
+            options.setPageSize(pageSize);
+            if (conf != null && ConfigurationUtil.getPushdown(conf)) {
+                // Pushed down range filters may target properties without a range index.
+                options.setEnableScanInQuery(true);
+            }
+            if (this.partitionKeyRangeId.getLength() > 0) {
+                options.setPartitionKeyRangeIdInternal(this.partitionKeyRangeId.toString());
+            }
+
+            int prefetchPages = conf != null ? ConfigurationUtil.getPrefetchPages(conf) : 0;
+            DocumentDBReadCheckpoint checkpoint = DocumentDBReadCheckpoint.create(conf, this);
+            String continuation = null;
+            long resumedDocumentCount = 0;
+            if (checkpoint != null && checkpoint.load()) {
+                continuation = checkpoint.getContinuation();
+                resumedDocumentCount = checkpoint.getDocumentsRead();
+            }
+
+            int checkpointInterval = checkpoint != null ? ConfigurationUtil.getCheckpointInterval(conf) : 0;
+            DocumentDBPageFetcher fetcher = new DocumentDBPageFetcher(client, coll.getSelfLink(), query, options,
+                    continuation);
+            if (conf != null && ConfigurationUtil.getAdaptivePageSize(conf)) {
+                fetcher.setPageSizeController(new DocumentDBPageSizeController(pageSize,
+                        ConfigurationUtil.getTargetRequestCharge(conf), ConfigurationUtil.getTargetPageBytes(conf)));
+            }
+            if (conf != null) {
+                fetcher.setRequestLimiter(DocumentDBRequestLimiter.get(conf));
+            }
+
+            this.documentIterator = new DocumentDBDocumentIterator(fetcher, prefetchPages, checkpoint,
+                    checkpointInterval, resumedDocumentCount);
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -170,7 +462,8 @@ public class DocumentDBInputSplit extends InputSplit implements Writable, org.ap
     }
 
     public String toString() {
-        return String.format("DocumentDBSplit(collection=%s)", this.collName);
+        return String.format("DocumentDBSplit(collection=%s, partitionKeyRange=%s)", this.collName,
+                this.partitionKeyRangeId);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Partitions DocumentDBWritable keys by the property paths of DocumentDB.groupKeyFields, so that the keys grouped
+ * together by DocumentDBWritableGroupingComparator reach the same reducer. Set with
+ * Job.setPartitionerClass(DocumentDBKeyPartitioner.class).
+ */
+public class DocumentDBKeyPartitioner<V> extends Partitioner<DocumentDBWritable, V> implements Configurable {
+    private Configuration conf;
+    private DocumentDBKeyPath[] keyPaths;
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.keyPaths = DocumentDBKeyPath.create(ConfigurationUtil.getGroupKeyFields(conf));
+    }
+
+    public Configuration getConf() {
+        return this.conf;
+    }
+
+    @Override
+    public int getPartition(DocumentDBWritable key, V value, int numPartitions) {
+        int hash;
+        try {
+            this.buffer.reset();
+            key.write(this.buffer);
+            byte[] data = this.buffer.getData();
+            int offset = WritableUtils.decodeVIntSize(data[0]);
+            if (this.keyPaths == null) {
+                hash = WritableComparator.hashBytes(data, offset, this.buffer.getLength() - offset);
+            } else {
+                hash = 0;
+                for (DocumentDBKeyPath keyPath : this.keyPaths) {
+                    hash = 31 * hash + DocumentDBKeyPath.hashValue(data, keyPath.find(data, offset));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return (hash & Integer.MAX_VALUE) % numPartitions;
+    }
+}
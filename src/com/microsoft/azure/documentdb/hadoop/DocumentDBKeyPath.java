@@ -0,0 +1,311 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.json.JSONObject;
+
+/**
+ * A property path, such as id or customer.name, located in documents encoded by DocumentDBBinaryEncoding without
+ * decoding them. Property names are encoded once per document and then referred to by index, so the names met while
+ * skipping other properties are tracked to recognize the later references to the path's names.
+ * Values are ordered by type first: missing, null, false, true, numbers, strings, objects and arrays. Numbers are
+ * compared by value and strings like String.compareTo. Objects and arrays are compared by their encoded bytes, which
+ * is consistent but depends on the names met earlier in the document, so they only make stable keys as a whole
+ * document.
+ * The names met by a lookup are tracked in a NameTable of the lookup, so a key path can be shared between threads.
+ */
+public class DocumentDBKeyPath {
+    private final byte[][] segments;
+
+    /**
+     * @param path the property names of the path, separated by dots.
+     */
+    public DocumentDBKeyPath(String path) {
+        String[] segmentNames = path.split("\\.");
+        this.segments = new byte[segmentNames.length][];
+        for (int i = 0; i < segmentNames.length; i++) {
+            this.segments[i] = new byte[DocumentDBBinaryEncoding.getEncodedLength(segmentNames[i])];
+            DocumentDBBinaryEncoding.encodeString(segmentNames[i], this.segments[i]);
+        }
+    }
+
+    /**
+     * Creates the key paths of property paths.
+     * @return the key paths, or null if paths is null.
+     */
+    public static DocumentDBKeyPath[] create(String[] paths) {
+        if (paths == null) {
+            return null;
+        }
+
+        DocumentDBKeyPath[] keyPaths = new DocumentDBKeyPath[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            keyPaths[i] = new DocumentDBKeyPath(paths[i]);
+        }
+
+        return keyPaths;
+    }
+
+    /**
+     * Finds the value of the path in an encoded document.
+     * @param data the bytes of the encoded document.
+     * @param offset the offset of the document in data.
+     * @return the offset of the value, or -1 if the document doesn't have the path.
+     */
+    public int find(byte[] data, int offset) throws IOException {
+        NameTable names = new NameTable(this.segments);
+        for (int depth = 0; depth < this.segments.length; depth++) {
+            if (data[offset] != DocumentDBBinaryEncoding.OBJECT) {
+                return -1;
+            }
+
+            offset = findProperty(data, offset + 1, depth, names);
+            if (offset < 0) {
+                return -1;
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Finds the value of a segment of the path among the properties of an object.
+     * @return the offset of the value, or -1 if the object doesn't have the property.
+     */
+    private static int findProperty(byte[] data, int offset, int depth, NameTable names) throws IOException {
+        while (true) {
+            int code = WritableComparator.readVInt(data, offset);
+            offset += WritableUtils.decodeVIntSize(data[offset]);
+            if (code == DocumentDBBinaryEncoding.END_OF_OBJECT) {
+                return -1;
+            }
+
+            boolean found;
+            if (code == DocumentDBBinaryEncoding.NEW_NAME) {
+                int length = WritableComparator.readVInt(data, offset);
+                offset += WritableUtils.decodeVIntSize(data[offset]);
+                names.add(data, offset, length);
+                offset += length;
+                found = names.segmentIndices[depth] == names.count - 1;
+            } else {
+                found = code - DocumentDBBinaryEncoding.FIRST_NAME == names.segmentIndices[depth];
+            }
+
+            if (found) {
+                return offset;
+            }
+
+            offset = skip(data, offset, names);
+        }
+    }
+
+    /**
+     * Skips an encoded value.
+     * @param names the table recording the property names met in the value, or null.
+     * @return the offset following the value.
+     */
+    private static int skip(byte[] data, int offset, NameTable names) throws IOException {
+        byte tag = data[offset++];
+        switch (tag) {
+        case DocumentDBBinaryEncoding.NULL:
+        case DocumentDBBinaryEncoding.FALSE:
+        case DocumentDBBinaryEncoding.TRUE:
+            return offset;
+        case DocumentDBBinaryEncoding.LONG:
+            return offset + WritableUtils.decodeVIntSize(data[offset]);
+        case DocumentDBBinaryEncoding.NUMBER:
+        case DocumentDBBinaryEncoding.STRING:
+            return offset + WritableUtils.decodeVIntSize(data[offset]) + WritableComparator.readVInt(data, offset);
+        case DocumentDBBinaryEncoding.ARRAY:
+            while (data[offset] != DocumentDBBinaryEncoding.END) {
+                offset = skip(data, offset, names);
+            }
+
+            return offset + 1;
+        case DocumentDBBinaryEncoding.OBJECT:
+            while (true) {
+                int code = WritableComparator.readVInt(data, offset);
+                offset += WritableUtils.decodeVIntSize(data[offset]);
+                if (code == DocumentDBBinaryEncoding.END_OF_OBJECT) {
+                    return offset;
+                } else if (code == DocumentDBBinaryEncoding.NEW_NAME) {
+                    int length = WritableComparator.readVInt(data, offset);
+                    offset += WritableUtils.decodeVIntSize(data[offset]);
+                    if (names != null) {
+                        names.add(data, offset, length);
+                    }
+
+                    offset += length;
+                }
+
+                offset = skip(data, offset, names);
+            }
+        default:
+            throw new IOException(String.format("Unknown tag %d in the encoded document.", tag));
+        }
+    }
+
+    /**
+     * Compares two values found by find.
+     * @param offset1 the offset of the first value in data1, or -1 if it is missing.
+     * @param offset2 the offset of the second value in data2, or -1 if it is missing.
+     */
+    public static int compareValues(byte[] data1, int offset1, byte[] data2, int offset2) throws IOException {
+        int rank1 = getRank(data1, offset1);
+        int rank2 = getRank(data2, offset2);
+        if (rank1 != rank2) {
+            return rank1 < rank2 ? -1 : 1;
+        } else if (offset1 < 0) {
+            return 0;
+        }
+
+        switch (data1[offset1]) {
+        case DocumentDBBinaryEncoding.NULL:
+        case DocumentDBBinaryEncoding.FALSE:
+        case DocumentDBBinaryEncoding.TRUE:
+            return 0;
+        case DocumentDBBinaryEncoding.LONG:
+        case DocumentDBBinaryEncoding.NUMBER:
+            if (data1[offset1] == DocumentDBBinaryEncoding.LONG && data2[offset2] == DocumentDBBinaryEncoding.LONG) {
+                return Long.compare(WritableComparator.readVLong(data1, offset1 + 1),
+                        WritableComparator.readVLong(data2, offset2 + 1));
+            }
+
+            return Double.compare(readNumber(data1, offset1), readNumber(data2, offset2));
+        case DocumentDBBinaryEncoding.STRING:
+            int length1 = WritableComparator.readVInt(data1, offset1 + 1);
+            int length2 = WritableComparator.readVInt(data2, offset2 + 1);
+            return WritableComparator.compareBytes(
+                    data1, offset1 + 1 + WritableUtils.decodeVIntSize(data1[offset1 + 1]), length1,
+                    data2, offset2 + 1 + WritableUtils.decodeVIntSize(data2[offset2 + 1]), length2);
+        default:
+            return WritableComparator.compareBytes(data1, offset1, skip(data1, offset1, null) - offset1,
+                    data2, offset2, skip(data2, offset2, null) - offset2);
+        }
+    }
+
+    /**
+     * Hashes a value found by find, consistently with compareValues.
+     * @param offset the offset of the value in data, or -1 if it is missing.
+     */
+    public static int hashValue(byte[] data, int offset) throws IOException {
+        if (offset < 0) {
+            return 0;
+        }
+
+        switch (data[offset]) {
+        case DocumentDBBinaryEncoding.LONG:
+        case DocumentDBBinaryEncoding.NUMBER:
+            long bits = Double.doubleToLongBits(readNumber(data, offset));
+            return (int) (bits ^ (bits >>> 32));
+        case DocumentDBBinaryEncoding.STRING:
+            int length = WritableComparator.readVInt(data, offset + 1);
+            return WritableComparator.hashBytes(data, offset + 1 + WritableUtils.decodeVIntSize(data[offset + 1]),
+                    length);
+        default:
+            return WritableComparator.hashBytes(data, offset, skip(data, offset, null) - offset);
+        }
+    }
+
+    /**
+     * Reads a value found by find, unless it is an object or an array.
+     * @param offset the offset of the value in data, or -1 if it is missing.
+     * @return the Boolean, Integer, Long, Double, String or JSONObject.NULL value, or null if the value is missing, an
+     * object or an array.
+     */
+    public static Object readScalar(byte[] data, int offset) throws IOException {
+        if (offset < 0) {
+            return null;
+        }
+
+        switch (data[offset]) {
+        case DocumentDBBinaryEncoding.NULL:
+            return JSONObject.NULL;
+        case DocumentDBBinaryEncoding.FALSE:
+            return Boolean.FALSE;
+        case DocumentDBBinaryEncoding.TRUE:
+            return Boolean.TRUE;
+        case DocumentDBBinaryEncoding.LONG:
+            long value = WritableComparator.readVLong(data, offset + 1);
+            if (value == (int) value) {
+                return Integer.valueOf((int) value);
+            }
+
+            return Long.valueOf(value);
+        case DocumentDBBinaryEncoding.NUMBER:
+            return Double.valueOf(readNumber(data, offset));
+        case DocumentDBBinaryEncoding.STRING:
+            int length = WritableComparator.readVInt(data, offset + 1);
+            StringBuilder builder = new StringBuilder(length);
+            DocumentDBBinaryEncoding.decodeString(data, offset + 1 + WritableUtils.decodeVIntSize(data[offset + 1]),
+                    length, builder);
+            return builder.toString();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the value found by find is an object or an array.
+     */
+    public static boolean isContainer(byte[] data, int offset) {
+        return offset >= 0
+                && (data[offset] == DocumentDBBinaryEncoding.OBJECT || data[offset] == DocumentDBBinaryEncoding.ARRAY);
+    }
+
+    private static int getRank(byte[] data, int offset) {
+        if (offset < 0) {
+            return 0;
+        }
+
+        byte tag = data[offset];
+        return tag == DocumentDBBinaryEncoding.LONG ? DocumentDBBinaryEncoding.NUMBER + 1 : tag + 1;
+    }
+
+    private static double readNumber(byte[] data, int offset) throws IOException {
+        if (data[offset] == DocumentDBBinaryEncoding.LONG) {
+            return WritableComparator.readVLong(data, offset + 1);
+        }
+
+        int length = WritableComparator.readVInt(data, offset + 1);
+        return Double.parseDouble(new String(data, offset + 1 + WritableUtils.decodeVIntSize(data[offset + 1]),
+                length, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * The property names met by a lookup, counted in the order they are encoded, and the indices of the names of the
+     * segments of the path among them.
+     */
+    private static class NameTable {
+        private final byte[][] segments;
+        private final int[] segmentIndices;
+        private int count;
+
+        private NameTable(byte[][] segments) {
+            this.segments = segments;
+            this.segmentIndices = new int[segments.length];
+            Arrays.fill(this.segmentIndices, -1);
+        }
+
+        /**
+         * Gives the next index to a new property name, and records it for the segments with this name.
+         */
+        private void add(byte[] data, int offset, int length) {
+            for (int i = 0; i < this.segments.length; i++) {
+                if (this.segmentIndices[i] < 0 && WritableComparator.compareBytes(this.segments[i], 0,
+                        this.segments[i].length, data, offset, length) == 0) {
+                    this.segmentIndices[i] = this.count;
+                }
+            }
+
+            this.count++;
+        }
+    }
+}
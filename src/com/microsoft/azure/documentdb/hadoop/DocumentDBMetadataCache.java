@@ -0,0 +1,64 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.microsoft.azure.documentdb.DocumentClient;
+import com.microsoft.azure.documentdb.Resource;
+
+/**
+ * A process wide cache of the databases, collections and stored procedures resolved by the connector, so that
+ * tasks sharing a JVM don't query the same metadata again. Entries expire after a few minutes and are kept
+ * separately for every DocumentClient instance.
+ */
+public class DocumentDBMetadataCache {
+    private static final long TIME_TO_LIVE_SECONDS = 300;
+
+    private static final LoadingCache<DocumentClient, Cache<String, Resource>> CACHES = CacheBuilder.newBuilder()
+            .weakKeys().build(new CacheLoader<DocumentClient, Cache<String, Resource>>() {
+                @Override
+                public Cache<String, Resource> load(DocumentClient client) {
+                    return CacheBuilder.newBuilder().expireAfterWrite(TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS)
+                            .build();
+                }
+            });
+
+    /**
+     * Gets a cached resource.
+     * @param client the DocumentClient the resource was read with.
+     * @param key the cache key, e.g. the parent link and the id of the resource.
+     * @param resourceClass the type of the resource.
+     * @return the cached resource or null if it isn't cached or has expired.
+     */
+    public static <T extends Resource> T get(DocumentClient client, String key, Class<T> resourceClass) {
+        Resource resource = CACHES.getUnchecked(client).getIfPresent(key);
+        return resourceClass.isInstance(resource) ? resourceClass.cast(resource) : null;
+    }
+
+    /**
+     * Caches a resource, null resources are not cached.
+     * @param client the DocumentClient the resource was read with.
+     * @param key the cache key, e.g. the parent link and the id of the resource.
+     * @param resource the resource to cache.
+     */
+    public static void put(DocumentClient client, String key, Resource resource) {
+        if (resource != null) {
+            CACHES.getUnchecked(client).put(key, resource);
+        }
+    }
+
+    /**
+     * Removes a resource from the cache.
+     * @param client the DocumentClient the resource was read with.
+     * @param key the cache key of the resource.
+     */
+    public static void invalidate(DocumentClient client, String key) {
+        CACHES.getUnchecked(client).invalidate(key);
+    }
+}
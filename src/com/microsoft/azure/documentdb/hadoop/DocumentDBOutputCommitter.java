@@ -3,30 +3,47 @@
 //------------------------------------------------------------
 package com.microsoft.azure.documentdb.hadoop;
 
+import java.io.IOException;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobStatus;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
+/**
+ * Commits the output of the jobs writing to documentdb. With DocumentDB.transactionalOutput, the documents written
+ * by the task attempts that aren't committed are removed, see DocumentDBOutputTransaction.
+ */
 public class DocumentDBOutputCommitter extends OutputCommitter {
 
     private static final Log LOG = LogFactory.getLog(DocumentDBWritable.class);
 
     /**
-     * @inheritDoc
+     * Removes the documents written by the task attempt when the output is transactional.
      */
     @Override
-    public void abortTask(final TaskAttemptContext taskContext) {
+    public void abortTask(final TaskAttemptContext taskContext) throws IOException {
         LOG.info("Aborting task.");
+        DocumentDBOutputTransaction transaction = DocumentDBOutputTransaction.get(taskContext.getConfiguration(),
+                taskContext.getTaskAttemptID());
+        if (transaction != null) {
+            transaction.abort();
+        }
     }
 
     /**
-     * @inheritDoc
+     * Keeps the documents written by the task attempt when the output is transactional.
      */
     @Override
-    public void commitTask(final TaskAttemptContext taskContext) {
+    public void commitTask(final TaskAttemptContext taskContext) throws IOException {
         LOG.info("Committing task.");
+        DocumentDBOutputTransaction transaction = DocumentDBOutputTransaction.get(taskContext.getConfiguration(),
+                taskContext.getTaskAttemptID());
+        if (transaction != null) {
+            transaction.commit();
+        }
     }
 
     /**
@@ -37,6 +54,28 @@ public class DocumentDBOutputCommitter extends OutputCommitter {
         return true;
     }
 
+    /**
+     * Removes the documents written by the task attempts that weren't committed, and commits the watermarks of
+     * incremental reads once the job succeeded.
+     */
+    @Override
+    public void commitJob(final JobContext jobContext) throws IOException {
+        LOG.info("Committing job.");
+        DocumentDBOutputTransaction.commitJob(jobContext.getConfiguration());
+        DocumentDBWatermarks.commit(jobContext.getConfiguration());
+    }
+
+    /**
+     * Removes the documents written by the job when the output is transactional, and discards the watermarks of
+     * incremental reads.
+     */
+    @Override
+    public void abortJob(final JobContext jobContext, final JobStatus.State state) throws IOException {
+        LOG.info("Aborting job.");
+        DocumentDBOutputTransaction.abortJob(jobContext.getConfiguration());
+        DocumentDBWatermarks.abort(jobContext.getConfiguration());
+    }
+
     /**
      * @inheritDoc
      */
@@ -46,11 +85,16 @@ public class DocumentDBOutputCommitter extends OutputCommitter {
     }
 
     /**
-     * @inheritDoc
+     * Registers the task attempt when the output is transactional.
      */
     @Override
-    public void setupTask(final TaskAttemptContext taskContext) {
+    public void setupTask(final TaskAttemptContext taskContext) throws IOException {
         LOG.info("Setting up task.");
+        DocumentDBOutputTransaction transaction = DocumentDBOutputTransaction.get(taskContext.getConfiguration(),
+                taskContext.getTaskAttemptID());
+        if (transaction != null) {
+            transaction.begin();
+        }
     }
 
 }
\ No newline at end of file
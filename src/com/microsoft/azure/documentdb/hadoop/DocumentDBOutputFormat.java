@@ -19,7 +19,8 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 public class DocumentDBOutputFormat extends OutputFormat<Writable, DocumentDBWritable> {
     
     /**
-     * Validates the required properties needed to write to documentdb.
+     * Validates the required properties needed to write to documentdb, and provisions the output collections once
+     * for all the record writers of the job.
      */
     @Override
     public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
@@ -37,6 +38,8 @@ public class DocumentDBOutputFormat extends OutputFormat<Writable, DocumentDBWri
             throw new IOException("DB_NAME must be set for the jobconf");
         if (collectionNames == null || collectionNames.length == 0)
             throw new IOException("OUTPUT_COLLECTION_NAMES must be set for the jobconf as comma separated names");
+
+        DocumentDBConnectorUtil.provisionOutputCollections(conf);
     }
 
     /**
@@ -0,0 +1,443 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.json.JSONArray;
+
+import com.microsoft.azure.documentdb.AccessCondition;
+import com.microsoft.azure.documentdb.AccessConditionType;
+import com.microsoft.azure.documentdb.Database;
+import com.microsoft.azure.documentdb.Document;
+import com.microsoft.azure.documentdb.DocumentClient;
+import com.microsoft.azure.documentdb.DocumentClientException;
+import com.microsoft.azure.documentdb.DocumentCollection;
+import com.microsoft.azure.documentdb.FeedOptions;
+import com.microsoft.azure.documentdb.PartitionKey;
+import com.microsoft.azure.documentdb.RequestOptions;
+import com.microsoft.azure.documentdb.ResourceResponse;
+
+/**
+ * The output of a task attempt when DocumentDB.transactionalOutput is enabled. Every document the attempt writes is
+ * tagged with its task in _hadoopTask, and with the attempts of the task that wrote it in _hadoopAttempts.
+ * The attempts are tracked with marker files under the job directory: an attempt is registered when it is set up,
+ * and moves to the committed attempts when it is committed. Aborting an attempt removes it from the documents it
+ * wrote, and deletes the documents that no other attempt wrote. Committing the job aborts the attempts that were
+ * neither committed nor aborted, such as killed speculative attempts, and aborting the job aborts all the attempts.
+ */
+public class DocumentDBOutputTransaction {
+    private static final Log LOG = LogFactory.getLog(DocumentDBOutputTransaction.class);
+    public static final String TASK_PROPERTY = "_hadoopTask";
+    public static final String ATTEMPTS_PROPERTY = "_hadoopAttempts";
+    private static final String ATTEMPTS_DIR = "attempts";
+    private static final String COMMITTED_DIR = "committed";
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final Configuration conf;
+    private final TaskAttemptID attemptId;
+    private final Path transactionDir;
+
+    private DocumentDBOutputTransaction(Configuration conf, TaskAttemptID attemptId, Path transactionDir) {
+        this.conf = conf;
+        this.attemptId = attemptId;
+        this.transactionDir = transactionDir;
+    }
+
+    /**
+     * Gets the transaction of the running task attempt.
+     * @param conf job configuration object of the task attempt.
+     * @return the transaction, or null if the output isn't transactional.
+     */
+    public static DocumentDBOutputTransaction get(Configuration conf) throws IOException {
+        String attemptId = conf.get(ConfigurationUtil.TASK_ATTEMPT_ID);
+        return get(conf, attemptId != null ? TaskAttemptID.forName(attemptId) : null);
+    }
+
+    /**
+     * Gets the transaction of a task attempt.
+     * @param conf job configuration object.
+     * @param attemptId the task attempt.
+     * @return the transaction, or null if the output isn't transactional.
+     */
+    public static DocumentDBOutputTransaction get(Configuration conf, TaskAttemptID attemptId) throws IOException {
+        if (!ConfigurationUtil.getTransactionalOutput(conf)) {
+            return null;
+        }
+
+        String transactionDir = ConfigurationUtil.getTransactionDir(conf);
+        if (attemptId == null || transactionDir == null) {
+            throw new IOException("Transactional output requires the task attempt id and the job directory.");
+        }
+
+        return new DocumentDBOutputTransaction(conf, attemptId, new Path(transactionDir));
+    }
+
+    /**
+     * Tags a document with the task attempt writing it.
+     * @param doc the document to write.
+     */
+    public void tag(Document doc) {
+        doc.set(TASK_PROPERTY, this.attemptId.getTaskID().toString());
+        doc.set(ATTEMPTS_PROPERTY, new JSONArray().put(this.attemptId.getId()));
+    }
+
+    /**
+     * Writes a tagged document that has no partition key value, which the bulk import stored procedure can't write.
+     * Like the stored procedure, a document already written by another attempt of the same task is replaced and
+     * keeps the attempts that wrote it, so that a retried attempt doesn't conflict with the output of a failed one.
+     * @param client the DocumentClient instance.
+     * @param collection the partitioned collection the document is written to.
+     * @param doc the document, tagged by the task attempt.
+     * @param upsert true to also replace a document written by another task.
+     * @param requestLimiter the request limiter of the task, null to send the requests right away.
+     */
+    public void writeDocument(DocumentClient client, DocumentCollection collection, Document doc, boolean upsert,
+            DocumentDBRequestLimiter requestLimiter) {
+        while (true) {
+            try {
+                DocumentDBConnectorUtil.createDocument(client, collection.getSelfLink(), doc, false, requestLimiter);
+                return;
+            } catch (IllegalStateException e) {
+                if (DocumentDBConnectorUtil.getStatusCode(e) != CONFLICT) {
+                    throw e;
+                }
+
+                Document existing = this.findDocument(client, collection, doc.getId(), requestLimiter);
+                if (existing == null) {
+                    // The document was deleted in the meantime.
+                    continue;
+                }
+
+                Object attempts = existing.get(ATTEMPTS_PROPERTY);
+                boolean sameTask = this.attemptId.getTaskID().toString().equals(existing.getString(TASK_PROPERTY))
+                        && attempts instanceof JSONArray;
+                if (!sameTask && !upsert) {
+                    throw e;
+                }
+
+                Document replacement = new Document(doc.toString());
+                if (sameTask) {
+                    JSONArray mergedAttempts = new JSONArray().put(this.attemptId.getId());
+                    for (int i = 0; i < ((JSONArray) attempts).length(); i++) {
+                        int attempt = ((JSONArray) attempts).optInt(i, -1);
+                        if (attempt != this.attemptId.getId()) {
+                            mergedAttempts.put(attempt);
+                        }
+                    }
+
+                    replacement.set(ATTEMPTS_PROPERTY, mergedAttempts);
+                }
+
+                if (this.replaceDocument(client, collection, replacement, existing, requestLimiter)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the task attempt before it writes documents.
+     */
+    public void begin() throws IOException {
+        Path marker = this.getMarker(ATTEMPTS_DIR);
+        marker.getFileSystem(this.conf).create(marker, true).close();
+    }
+
+    /**
+     * Keeps the documents written by the task attempt.
+     */
+    public void commit() throws IOException {
+        Path marker = this.getMarker(ATTEMPTS_DIR);
+        Path committedMarker = this.getMarker(COMMITTED_DIR);
+        FileSystem fs = marker.getFileSystem(this.conf);
+        fs.mkdirs(committedMarker.getParent());
+        if (!fs.rename(marker, committedMarker)) {
+            throw new IOException(String.format("Failed to commit the task attempt %s.", this.attemptId));
+        }
+
+        LOG.info(String.format("Committed the output of %s.", this.attemptId));
+    }
+
+    /**
+     * Removes the documents written by the task attempt, unless another attempt of the task wrote them too.
+     */
+    public void abort() throws IOException {
+        LOG.info(String.format("Removing the output of %s.", this.attemptId));
+        try {
+            DocumentClient client = DocumentDBClientPool.getClient(ConfigurationUtil.getDBEndpoint(this.conf),
+                    ConfigurationUtil.getDBKey(this.conf));
+            Database db = DocumentDBConnectorUtil.GetDatabase(client, ConfigurationUtil.getDBName(this.conf));
+            if (db != null) {
+                DocumentDBRequestLimiter requestLimiter = DocumentDBRequestLimiter.get(this.conf);
+                try {
+                    for (String collectionName : ConfigurationUtil.getOutputCollectionNames(this.conf)) {
+                        DocumentCollection collection = DocumentDBConnectorUtil.GetDocumentCollection(client,
+                                db.getSelfLink(), collectionName);
+                        if (collection != null) {
+                            this.removeAttempt(client, collection, requestLimiter);
+                        }
+                    }
+                } finally {
+                    if (requestLimiter != null) {
+                        requestLimiter.release();
+                    }
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException(String.format("Failed to remove the output of %s.", this.attemptId), e);
+        }
+
+        for (String markerDir : new String[] { ATTEMPTS_DIR, COMMITTED_DIR }) {
+            Path marker = this.getMarker(markerDir);
+            marker.getFileSystem(this.conf).delete(marker, false);
+        }
+    }
+
+    /**
+     * Aborts the task attempts of the job that were neither committed nor aborted.
+     * @param conf job configuration object.
+     */
+    public static void commitJob(Configuration conf) throws IOException {
+        abortAttempts(conf, ATTEMPTS_DIR);
+    }
+
+    /**
+     * Aborts all the task attempts of the job, committed or not.
+     * @param conf job configuration object.
+     */
+    public static void abortJob(Configuration conf) throws IOException {
+        abortAttempts(conf, ATTEMPTS_DIR);
+        abortAttempts(conf, COMMITTED_DIR);
+    }
+
+    private static void abortAttempts(Configuration conf, String markerDir) throws IOException {
+        if (!ConfigurationUtil.getTransactionalOutput(conf) || ConfigurationUtil.getTransactionDir(conf) == null) {
+            return;
+        }
+
+        Path transactionDir = new Path(ConfigurationUtil.getTransactionDir(conf));
+        Path dir = new Path(transactionDir, markerDir);
+        FileSystem fs = dir.getFileSystem(conf);
+        if (!fs.exists(dir)) {
+            return;
+        }
+
+        for (FileStatus status : fs.listStatus(dir)) {
+            TaskAttemptID attemptId = TaskAttemptID.forName(status.getPath().getName());
+            new DocumentDBOutputTransaction(conf, attemptId, transactionDir).abort();
+        }
+    }
+
+    private Path getMarker(String markerDir) {
+        return new Path(new Path(this.transactionDir, markerDir), this.attemptId.toString());
+    }
+
+    private void removeAttempt(DocumentClient client, DocumentCollection collection,
+            DocumentDBRequestLimiter requestLimiter) {
+        String query = String.format("SELECT * FROM root r WHERE r.%s = %s AND ARRAY_CONTAINS(r.%s, %d)",
+                TASK_PROPERTY, QueryUtil.toStringLiteral(this.attemptId.getTaskID().toString()), ATTEMPTS_PROPERTY,
+                this.attemptId.getId());
+        FeedOptions options = new FeedOptions();
+        options.setEnableCrossPartitionQuery(true);
+        DocumentDBPageFetcher fetcher = new DocumentDBPageFetcher(client, collection.getSelfLink(), query, options);
+        fetcher.setRequestLimiter(requestLimiter);
+
+        long documentsRemoved = 0;
+        DocumentDBPageFetcher.Page page;
+        while ((page = fetcher.fetchNextPage()) != null) {
+            for (Document doc : page.getDocuments()) {
+                this.removeAttempt(client, collection, doc, requestLimiter);
+                documentsRemoved++;
+            }
+        }
+
+        LOG.info(String.format("Removed %s from %d documents of %s.", this.attemptId, documentsRemoved,
+                collection.getId()));
+    }
+
+    /**
+     * Removes the task attempt from the attempts of a document, or deletes the document if no other attempt wrote it.
+     * The document is only changed if another attempt didn't change it in the meantime, otherwise it is read again.
+     */
+    private void removeAttempt(DocumentClient client, DocumentCollection collection, Document doc,
+            DocumentDBRequestLimiter requestLimiter) {
+        while (doc != null) {
+            JSONArray remainingAttempts = new JSONArray();
+            Object attempts = doc.get(ATTEMPTS_PROPERTY);
+            for (int i = 0; attempts instanceof JSONArray && i < ((JSONArray) attempts).length(); i++) {
+                int attempt = ((JSONArray) attempts).optInt(i, -1);
+                if (attempt != this.attemptId.getId()) {
+                    remainingAttempts.put(attempt);
+                }
+            }
+
+            RequestOptions options = getRequestOptions(collection, doc);
+            AccessCondition condition = new AccessCondition();
+            condition.setType(AccessConditionType.IfMatch);
+            condition.setCondition(doc.getETag());
+            options.setAccessCondition(condition);
+
+            BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+            try {
+                while (retryPolicy.shouldRetry()) {
+                    try {
+                        if (requestLimiter != null) {
+                            requestLimiter.acquire();
+                        }
+
+                        ResourceResponse<Document> response;
+                        if (remainingAttempts.length() == 0) {
+                            response = client.deleteDocument(doc.getSelfLink(), options);
+                        } else {
+                            doc.set(ATTEMPTS_PROPERTY, remainingAttempts);
+                            response = client.replaceDocument(doc, options);
+                        }
+
+                        if (requestLimiter != null) {
+                            requestLimiter.charge(response.getRequestCharge());
+                        }
+
+                        return;
+                    } catch (DocumentClientException e) {
+                        retryPolicy.errorOccured(e);
+                    }
+                }
+            } catch (IllegalStateException e) {
+                int statusCode = DocumentDBConnectorUtil.getStatusCode(e);
+                if (statusCode == NOT_FOUND) {
+                    return;
+                } else if (statusCode != PRECONDITION_FAILED) {
+                    throw e;
+                }
+            }
+
+            doc = this.readDocument(client, collection, doc);
+        }
+    }
+
+    /**
+     * Finds the document without a partition key value that has an id, returns null if there is none.
+     */
+    private Document findDocument(DocumentClient client, DocumentCollection collection, String id,
+            DocumentDBRequestLimiter requestLimiter) {
+        String query = String.format("SELECT * FROM root r WHERE r.id = %s", QueryUtil.toStringLiteral(id));
+        FeedOptions options = new FeedOptions();
+        options.setEnableCrossPartitionQuery(true);
+        DocumentDBPageFetcher fetcher = new DocumentDBPageFetcher(client, collection.getSelfLink(), query, options);
+        fetcher.setRequestLimiter(requestLimiter);
+
+        DocumentDBPageFetcher.Page page;
+        while ((page = fetcher.fetchNextPage()) != null) {
+            for (Document doc : page.getDocuments()) {
+                if (DocumentDBConnectorUtil.getPartitionKeyValue(collection, doc) == null) {
+                    return doc;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces a document unless another writer changed it since it was read.
+     * @return true if the document was replaced, false if it changed or was deleted in the meantime.
+     */
+    private boolean replaceDocument(DocumentClient client, DocumentCollection collection, Document doc,
+            Document existing, DocumentDBRequestLimiter requestLimiter) {
+        doc.set("_self", existing.getSelfLink());
+        RequestOptions options = getRequestOptions(collection, doc);
+        AccessCondition condition = new AccessCondition();
+        condition.setType(AccessConditionType.IfMatch);
+        condition.setCondition(existing.getETag());
+        options.setAccessCondition(condition);
+
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        try {
+            while (retryPolicy.shouldRetry()) {
+                try {
+                    if (requestLimiter != null) {
+                        requestLimiter.acquire();
+                    }
+
+                    ResourceResponse<Document> response = client.replaceDocument(doc, options);
+                    if (requestLimiter != null) {
+                        requestLimiter.charge(response.getRequestCharge());
+                    }
+
+                    return true;
+                } catch (DocumentClientException e) {
+                    retryPolicy.errorOccured(e);
+                }
+            }
+        } catch (IllegalStateException e) {
+            int statusCode = DocumentDBConnectorUtil.getStatusCode(e);
+            if (statusCode != NOT_FOUND && statusCode != PRECONDITION_FAILED) {
+                throw e;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads a document again, returns null if it was deleted or no longer written by the task attempt.
+     */
+    private Document readDocument(DocumentClient client, DocumentCollection collection, Document doc) {
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        Document currentDoc = null;
+        try {
+            while (retryPolicy.shouldRetry()) {
+                try {
+                    currentDoc = client.readDocument(doc.getSelfLink(), getRequestOptions(collection, doc))
+                            .getResource();
+                    break;
+                } catch (DocumentClientException e) {
+                    retryPolicy.errorOccured(e);
+                }
+            }
+        } catch (IllegalStateException e) {
+            if (DocumentDBConnectorUtil.getStatusCode(e) == NOT_FOUND) {
+                return null;
+            }
+
+            throw e;
+        }
+
+        Object attempts = currentDoc.get(ATTEMPTS_PROPERTY);
+        if (!this.attemptId.getTaskID().toString().equals(currentDoc.getString(TASK_PROPERTY))
+                || !(attempts instanceof JSONArray)) {
+            return null;
+        }
+
+        for (int i = 0; i < ((JSONArray) attempts).length(); i++) {
+            if (((JSONArray) attempts).optInt(i, -1) == this.attemptId.getId()) {
+                return currentDoc;
+            }
+        }
+
+        return null;
+    }
+
+    private static RequestOptions getRequestOptions(DocumentCollection collection, Document doc) {
+        RequestOptions options = new RequestOptions();
+        if (collection.getPartitionKey() != null) {
+            Object partitionKeyValue = DocumentDBConnectorUtil.getPartitionKeyValue(collection, doc);
+            if (partitionKeyValue != null) {
+                options.setPartitionKey(new PartitionKey(partitionKeyValue));
+            }
+        }
+
+        return options;
+    }
+}
@@ -0,0 +1,225 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.azure.documentdb.Document;
+import com.microsoft.azure.documentdb.DocumentClient;
+import com.microsoft.azure.documentdb.DocumentClientException;
+import com.microsoft.azure.documentdb.FeedOptions;
+import com.microsoft.azure.documentdb.FeedResponse;
+import com.microsoft.azure.documentdb.QueryIterable;
+
+/**
+ * Fetches the results of a documentdb query one page at a time. Throttled requests are retried, and the query is
+ * reopened from the last continuation token when a page fails to be read because of a transient failure.
+ * With a DocumentDBPageSizeController, the query is also reopened from the last continuation token whenever the
+ * controller changes the page size. With a DocumentDBRequestLimiter, each page waits for the request units of the
+ * task and is charged to it.
+ */
+public class DocumentDBPageFetcher {
+    private static final Log LOG = LogFactory.getLog(DocumentDBPageFetcher.class);
+    private static final int MAX_REOPEN_ATTEMPTS = 3;
+    private static final long REOPEN_DELAY_MILLISECONDS = 1000;
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int GONE = 410;
+    private static final int RETRY_WITH = 449;
+    private static final int PAGE_BYTES_SAMPLE_SIZE = 10;
+
+    private final DocumentClient client;
+    private final String collectionLink;
+    private final String query;
+    private final FeedOptions options;
+    private FeedResponse<Document> response;
+    private QueryIterable<Document> iterable;
+    private String continuation;
+    private boolean started;
+    private boolean throttled;
+    private DocumentDBPageSizeController pageSizeController;
+    private DocumentDBRequestLimiter requestLimiter;
+
+    public DocumentDBPageFetcher(DocumentClient client, String collectionLink, String query, FeedOptions options) {
+        this(client, collectionLink, query, options, null);
+    }
+
+    /**
+     * Creates a page fetcher that starts reading from a continuation token.
+     * @param continuation the continuation token to start from, null to start from the first page.
+     */
+    public DocumentDBPageFetcher(DocumentClient client, String collectionLink, String query, FeedOptions options,
+            String continuation) {
+        this.client = client;
+        this.collectionLink = collectionLink;
+        this.query = query;
+        this.options = options;
+        this.continuation = continuation;
+    }
+
+    /**
+     * Adapts the page size of the query to the pages read with a controller.
+     * @param pageSizeController the controller of the page size, null to keep the page size of the FeedOptions.
+     */
+    public void setPageSizeController(DocumentDBPageSizeController pageSizeController) {
+        this.pageSizeController = pageSizeController;
+        if (pageSizeController != null) {
+            this.options.setPageSize(pageSizeController.getPageSize());
+        }
+    }
+
+    /**
+     * Paces the requests of the query with a limiter, which the fetcher releases when it is closed.
+     * @param requestLimiter the limiter of the task, null to send the requests as fast as possible.
+     */
+    public void setRequestLimiter(DocumentDBRequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    /**
+     * Releases the limiter of the fetcher.
+     */
+    public void close() {
+        if (this.requestLimiter != null) {
+            this.requestLimiter.release();
+            this.requestLimiter = null;
+        }
+    }
+
+    /**
+     * Fetches the next page of documents.
+     * @return the next page or null if there are no more documents.
+     */
+    public Page fetchNextPage() {
+        if (this.started && StringUtils.isEmpty(this.continuation)) {
+            return null;
+        }
+
+        int reopenAttempts = 0;
+        while (true) {
+            try {
+                long startTime = System.currentTimeMillis();
+                List<Document> documents = this.fetchNextBlock();
+                this.started = true;
+                this.continuation = documents != null ? this.response.getResponseContinuation() : null;
+                if (documents == null || (documents.isEmpty() && StringUtils.isEmpty(this.continuation))) {
+                    return null;
+                }
+
+                if (this.pageSizeController != null) {
+                    this.adaptPageSize(documents, System.currentTimeMillis() - startTime);
+                }
+
+                return new Page(documents, this.continuation);
+            } catch (IllegalStateException e) {
+                if (reopenAttempts >= MAX_REOPEN_ATTEMPTS || !isTransientFailure(e)) {
+                    throw e;
+                }
+
+                reopenAttempts++;
+                LOG.warn(String.format("Reading a page failed, reopening the query from the last continuation token "
+                        + "(attempt %d): %s", reopenAttempts, e.getMessage()));
+                this.response = null;
+                try {
+                    Thread.sleep(reopenAttempts * REOPEN_DELAY_MILLISECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+    }
+
+    private List<Document> fetchNextBlock() {
+        if (this.response == null) {
+            this.options.setRequestContinuation(this.continuation);
+            this.response = this.client.queryDocuments(this.collectionLink, this.query, this.options);
+            this.iterable = this.response.getQueryIterable();
+        }
+
+        this.throttled = false;
+        BackoffExponentialRetryPolicy retryPolicy = new BackoffExponentialRetryPolicy();
+        while (retryPolicy.shouldRetry()) {
+            try {
+                if (this.requestLimiter == null) {
+                    return this.iterable.fetchNextBlock();
+                }
+
+                this.requestLimiter.acquire();
+                List<Document> documents = this.iterable.fetchNextBlock();
+                this.requestLimiter.charge(this.response.getRequestCharge());
+                return documents;
+            } catch (Exception e) {
+                retryPolicy.errorOccured(e);
+                this.throttled = true;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reports the page to the controller, and reopens the query from the continuation token if the page size changes.
+     * The size of the page in UTF-8 bytes is extrapolated from a sample of its documents.
+     */
+    private void adaptPageSize(List<Document> documents, long latencyMilliseconds) {
+        long sampleBytes = 0;
+        int sampleSize = Math.min(documents.size(), PAGE_BYTES_SAMPLE_SIZE);
+        for (int i = 0; i < sampleSize; i++) {
+            sampleBytes += documents.get(i).toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        long pageBytes = sampleSize > 0 ? sampleBytes * documents.size() / sampleSize : 0;
+        int pageSize = this.pageSizeController.onPageRead(documents.size(), this.response.getRequestCharge(),
+                pageBytes, latencyMilliseconds, this.throttled);
+        if (pageSize != this.options.getPageSize() && !StringUtils.isEmpty(this.continuation)) {
+            this.options.setPageSize(pageSize);
+            this.response = null;
+        }
+    }
+
+    /**
+     * Transport failures, timeouts and server errors are transient, other documentdb errors are not.
+     */
+    private static boolean isTransientFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DocumentClientException) {
+                int statusCode = ((DocumentClientException) cause).getStatusCode();
+                return statusCode >= 500 || statusCode == REQUEST_TIMEOUT || statusCode == GONE
+                        || statusCode == RETRY_WITH;
+            } else if (cause instanceof IOException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A page of documents and the continuation token that follows it.
+     */
+    public static class Page {
+        private final List<Document> documents;
+        private final String continuation;
+
+        public Page(List<Document> documents, String continuation) {
+            this.documents = documents;
+            this.continuation = continuation;
+        }
+
+        public List<Document> getDocuments() {
+            return this.documents;
+        }
+
+        /**
+         * @return the continuation token to read the pages after this one, null after the last page.
+         */
+        public String getContinuation() {
+            return this.continuation;
+        }
+    }
+}
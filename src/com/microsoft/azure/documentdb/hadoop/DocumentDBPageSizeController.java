@@ -0,0 +1,89 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Adapts the page size of a query to the documents it returns. The cost of a document in request units, bytes and
+ * milliseconds is measured on every full page, and the page size is moved towards the number of documents that
+ * fits the target request charge and page bytes. Throttled or slow pages shrink the page size. Since changing the
+ * page size reopens the query, the page size only moves when the new size differs from it by more than a quarter.
+ */
+public class DocumentDBPageSizeController {
+    private static final Log LOG = LogFactory.getLog(DocumentDBPageSizeController.class);
+    public static final int MIN_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final long TARGET_LATENCY_MILLISECONDS = 2000;
+    private static final int MAX_GROWTH_FACTOR = 2;
+    private static final double MIN_CHANGE_RATIO = 0.25;
+
+    private final double targetRequestCharge;
+    private final long targetPageBytes;
+    private int pageSize;
+
+    /**
+     * @param initialPageSize the page size of the first page.
+     * @param targetRequestCharge the request charge of a page to aim for.
+     * @param targetPageBytes the size of a page in bytes to aim for.
+     */
+    public DocumentDBPageSizeController(int initialPageSize, double targetRequestCharge, long targetPageBytes) {
+        this.pageSize = clamp(initialPageSize);
+        this.targetRequestCharge = targetRequestCharge;
+        this.targetPageBytes = targetPageBytes;
+    }
+
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Reports a page read from documentdb and computes the size of the next page.
+     * @param documentCount the number of documents in the page.
+     * @param requestCharge the request charge of the page.
+     * @param pageBytes the estimated size of the page in UTF-8 bytes.
+     * @param latencyMilliseconds the time it took to read the page.
+     * @param throttled true if reading the page was throttled.
+     * @return the size of the next page.
+     */
+    public int onPageRead(int documentCount, double requestCharge, long pageBytes, long latencyMilliseconds,
+            boolean throttled) {
+        int nextPageSize = this.pageSize;
+        if (throttled) {
+            nextPageSize = this.pageSize / 2;
+        } else if (documentCount >= this.pageSize && documentCount > 0) {
+            // Only full pages tell how many documents would fit in a page.
+            double target = Double.MAX_VALUE;
+            if (requestCharge > 0) {
+                target = Math.min(target, this.targetRequestCharge * documentCount / requestCharge);
+            }
+
+            if (pageBytes > 0) {
+                target = Math.min(target, (double) this.targetPageBytes * documentCount / pageBytes);
+            }
+
+            if (latencyMilliseconds > TARGET_LATENCY_MILLISECONDS) {
+                target = Math.min(target, (double) documentCount * TARGET_LATENCY_MILLISECONDS / latencyMilliseconds);
+            }
+
+            nextPageSize = (int) Math.min(target, (double) this.pageSize * MAX_GROWTH_FACTOR);
+        } else if (latencyMilliseconds > TARGET_LATENCY_MILLISECONDS) {
+            nextPageSize = this.pageSize / 2;
+        }
+
+        nextPageSize = clamp(nextPageSize);
+        if (Math.abs(nextPageSize - this.pageSize) > this.pageSize * MIN_CHANGE_RATIO) {
+            LOG.debug(String.format("Changing the page size from %d to %d (%d documents, %.2f RU, %d bytes, %d ms)",
+                    this.pageSize, nextPageSize, documentCount, requestCharge, pageBytes, latencyMilliseconds));
+            this.pageSize = nextPageSize;
+        }
+
+        return this.pageSize;
+    }
+
+    private static int clamp(int pageSize) {
+        return Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, pageSize));
+    }
+}
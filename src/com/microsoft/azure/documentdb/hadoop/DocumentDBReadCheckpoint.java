@@ -0,0 +1,156 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+/**
+ * Persists the position of a record reader in its split, the query continuation token and the number of documents
+ * read, to a file of the task attempt under DocumentDB.checkpointDir. A later attempt of the same task resumes
+ * from the most advanced checkpoint written by the previous attempts. Checkpoints are only saved when resuming is
+ * enabled with DocumentDB.resumeFromCheckpoint and safe for the job.
+ */
+public class DocumentDBReadCheckpoint {
+    private static final Log LOG = LogFactory.getLog(DocumentDBReadCheckpoint.class);
+
+    private final FileSystem fs;
+    private final Path taskDir;
+    private final Path attemptFile;
+    private final String splitSignature;
+    private String continuation;
+    private long documentsRead;
+
+    private DocumentDBReadCheckpoint(FileSystem fs, Path taskDir, Path attemptFile, String splitSignature) {
+        this.fs = fs;
+        this.taskDir = taskDir;
+        this.attemptFile = attemptFile;
+        this.splitSignature = splitSignature;
+    }
+
+    /**
+     * Creates the checkpoint of a task attempt reading a split.
+     * @param conf job configuration object of the task attempt.
+     * @param split the split read by the task attempt.
+     * @return the checkpoint, or null if checkpointing is disabled, resuming is not safe or the task attempt is
+     *         unknown.
+     */
+    public static DocumentDBReadCheckpoint create(Configuration conf, DocumentDBInputSplit split) throws IOException {
+        if (conf == null || ConfigurationUtil.getCheckpointInterval(conf) == 0) {
+            return null;
+        }
+
+        if (!ConfigurationUtil.isResumeSafe(conf)) {
+            LOG.warn("Checkpointing is disabled since resuming is not enabled, or the output of a failed attempt "
+                    + "doesn't survive it.");
+            return null;
+        }
+
+        String checkpointDir = ConfigurationUtil.getCheckpointDir(conf);
+        String attemptId = conf.get(ConfigurationUtil.TASK_ATTEMPT_ID);
+        if (checkpointDir == null || attemptId == null) {
+            LOG.warn("Checkpointing is disabled since the checkpoint directory or the task attempt is unknown.");
+            return null;
+        }
+
+        TaskAttemptID taskAttemptId = TaskAttemptID.forName(attemptId);
+        Path taskDir = new Path(checkpointDir, taskAttemptId.getTaskID().toString());
+        FileSystem fs = taskDir.getFileSystem(conf);
+        return new DocumentDBReadCheckpoint(fs, taskDir, new Path(taskDir, attemptId), split.getSignature());
+    }
+
+    /**
+     * Loads the most advanced checkpoint written by the attempts of the task.
+     * @return true if a checkpoint was found and the reader can resume from it.
+     */
+    public boolean load() {
+        try {
+            if (!this.fs.exists(this.taskDir)) {
+                return false;
+            }
+
+            for (FileStatus status : this.fs.listStatus(this.taskDir)) {
+                if (status.getPath().getName().startsWith(".")) {
+                    continue;
+                }
+
+                FSDataInputStream in = this.fs.open(status.getPath());
+                try {
+                    String signature = Text.readString(in);
+                    long documentsRead = in.readLong();
+                    String continuation = Text.readString(in);
+                    if (signature.equals(this.splitSignature) && documentsRead > this.documentsRead) {
+                        this.documentsRead = documentsRead;
+                        this.continuation = continuation;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to load the read checkpoints, reading the split from the beginning.", e);
+            this.continuation = null;
+            this.documentsRead = 0;
+        }
+
+        if (this.continuation != null) {
+            LOG.info(String.format("Resuming the split after %d documents.", this.documentsRead));
+        }
+
+        return this.continuation != null;
+    }
+
+    /**
+     * Saves the position of the reader, once the documents written by the task attempt so far are flushed to
+     * documentdb.
+     * Failing to save a checkpoint doesn't fail the reader.
+     * @param continuation the continuation token of the next page to read.
+     * @param documentsRead the number of documents read before the next page.
+     */
+    public void save(String continuation, long documentsRead) {
+        Path tempFile = new Path(this.taskDir, "." + this.attemptFile.getName());
+        try {
+            // The documents emitted for the records read so far must survive the attempt before the checkpoint
+            // skips them.
+            DocumentDBBatchWriter.flushOpenWriters(this.attemptFile.getName());
+            FSDataOutputStream out = this.fs.create(tempFile, true);
+            try {
+                Text.writeString(out, this.splitSignature);
+                out.writeLong(documentsRead);
+                Text.writeString(out, continuation);
+            } finally {
+                out.close();
+            }
+
+            this.fs.delete(this.attemptFile, false);
+            this.fs.rename(tempFile, this.attemptFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to save the read checkpoint.", e);
+        }
+    }
+
+    /**
+     * @return the continuation token of the loaded checkpoint.
+     */
+    public String getContinuation() {
+        return this.continuation;
+    }
+
+    /**
+     * @return the number of documents read before the loaded checkpoint.
+     */
+    public long getDocumentsRead() {
+        return this.documentsRead;
+    }
+}
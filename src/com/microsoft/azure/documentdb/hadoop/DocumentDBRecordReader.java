@@ -4,17 +4,15 @@
 package com.microsoft.azure.documentdb.hadoop;
 
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
-import com.microsoft.azure.documentdb.Document;
-
 /**
  * Reads documents from documendb using a DocumentDBIterable instance.
  */
@@ -22,36 +20,35 @@ public class DocumentDBRecordReader extends
         RecordReader<LongWritable, DocumentDBWritable> {
 
     private DocumentDBInputSplit split;
-    private Iterator<Document> documentIterator;
+    private DocumentDBDocumentIterator documentIterator;
     private long documentsProcessed;
+    private boolean finished;
     private DocumentDBWritable current;
     private static final Log LOG = LogFactory.getLog(DocumentDBWritable.class);
     
     public DocumentDBRecordReader(DocumentDBInputSplit split) throws IOException {
+        this(split, null);
+    }
+
+    public DocumentDBRecordReader(DocumentDBInputSplit split, Configuration conf) throws IOException {
         this.split = split;
         this.current = new DocumentDBWritable();
-        this.documentIterator = this.split.getDocumentIterator();
+        this.documentIterator = this.split.getDocumentIterator(conf);
+        this.documentsProcessed = this.documentIterator.getResumedDocumentCount();
     }
 
     public void close() throws IOException {
-
+        if (this.documentIterator != null) {
+            this.documentIterator.close();
+        }
     }
 
+    /**
+     * Returns the progress from the number of documents read and the split's estimated document count.
+     */
     public float getProgress() throws IOException {
-        if(this.documentIterator == null) return 0f;
-        boolean hasNext = false;
-        BackoffExponentialRetryPolicy policy = new BackoffExponentialRetryPolicy();
-        while(policy.shouldRetry()) {
-            try {
-                hasNext = this.documentIterator.hasNext();
-                break;
-            }
-            catch(Exception e) {
-                policy.errorOccured(e);
-            }
-        }
-        
-        return hasNext ? 0f : 1f;
+        if (this.finished) return 1f;
+        return this.split.getProgress(this.documentsProcessed);
     }
 
     /**
@@ -92,6 +89,7 @@ public class DocumentDBRecordReader extends
             try {
                 if (this.documentIterator == null || !this.documentIterator.hasNext()) {
                     LOG.info(String.format("processed %d documents of collection %s", this.documentsProcessed, this.split.getCollectionName()));
+                    this.finished = true;
                     return false;
                 }
                 
@@ -0,0 +1,290 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+
+/**
+ * A token bucket pacing the requests of a task, so that the tasks of a job consume about DocumentDB.targetRUPerSecond
+ * request units per second in total. A request waits until the bucket is out of debt, and is charged its request
+ * charge once it completes, so an expensive request delays the next ones instead of being throttled.
+ * The budget of the job is split evenly between the tasks that consumed request units recently. Every active task
+ * renews a lease file under the job directory, and the leases of idle or finished tasks lapse so that their budget
+ * goes to the tasks still running. Tasks starting together don't see each other's leases yet, so a new limiter
+ * assumes that all the tasks of its type in the job are active until the number of leases is stable for a renewal.
+ * One limiter is shared by the readers and writers of a task attempt, keyed by its job directory, target and task
+ * attempt, and each of them releases it when it is closed. The lease of the task is released and its renewer thread
+ * stopped once the limiter is released by all of them.
+ */
+public class DocumentDBRequestLimiter {
+    private static final Log LOG = LogFactory.getLog(DocumentDBRequestLimiter.class);
+    private static final long LEASE_RENEWAL_MILLISECONDS = 10000;
+    private static final long LEASE_EXPIRY_MILLISECONDS = 3 * LEASE_RENEWAL_MILLISECONDS;
+
+    private static final Map<String, DocumentDBRequestLimiter> LIMITERS =
+            new HashMap<String, DocumentDBRequestLimiter>();
+
+    private final double targetRUPerSecond;
+    private final FileSystem fs;
+    private final Path leaseDir;
+    private final Path leaseFile;
+    private String key;
+    private int references;
+    private int taskCountBound;
+    private int lastActiveTasks = -1;
+    private Thread renewer;
+    private boolean leased;
+    private double ruPerSecond;
+    private double balance;
+    private long lastRefillNanos = System.nanoTime();
+    private double chargeSinceRenewal;
+
+    private DocumentDBRequestLimiter(double targetRUPerSecond, FileSystem fs, Path leaseDir, Path leaseFile) {
+        this.targetRUPerSecond = targetRUPerSecond;
+        this.ruPerSecond = targetRUPerSecond;
+        this.fs = fs;
+        this.leaseDir = leaseDir;
+        this.leaseFile = leaseFile;
+    }
+
+    /**
+     * Gets the limiter of the task attempt, creating it on first use. Every limiter returned must be released.
+     * @param conf job configuration object.
+     * @return the limiter, or null if DocumentDB.targetRUPerSecond isn't set.
+     */
+    public static synchronized DocumentDBRequestLimiter get(Configuration conf) {
+        double targetRUPerSecond = ConfigurationUtil.getTargetRUPerSecond(conf);
+        if (targetRUPerSecond == 0) {
+            return null;
+        }
+
+        String key = String.format("%s|%s|%s", ConfigurationUtil.getRequestUnitLeaseDir(conf), targetRUPerSecond,
+                conf.get(ConfigurationUtil.TASK_ATTEMPT_ID));
+        DocumentDBRequestLimiter limiter = LIMITERS.get(key);
+        if (limiter == null) {
+            limiter = create(conf, targetRUPerSecond);
+            limiter.key = key;
+            LIMITERS.put(key, limiter);
+        }
+
+        limiter.references++;
+        return limiter;
+    }
+
+    /**
+     * Releases the limiter. Once all the readers and writers of the task attempt have released it, the lease of the
+     * task is released and the renewer thread stops.
+     */
+    public void release() {
+        synchronized (DocumentDBRequestLimiter.class) {
+            if (--this.references > 0) {
+                return;
+            }
+
+            LIMITERS.remove(this.key);
+        }
+
+        if (this.renewer == null) {
+            return;
+        }
+
+        this.renewer.interrupt();
+        try {
+            this.renewer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.releaseLease();
+    }
+
+    private static DocumentDBRequestLimiter create(Configuration conf, double targetRUPerSecond) {
+        String leaseDir = ConfigurationUtil.getRequestUnitLeaseDir(conf);
+        if (leaseDir == null) {
+            LOG.warn("The job directory is unknown, the task alone consumes targetRUPerSecond request units.");
+            return new DocumentDBRequestLimiter(targetRUPerSecond, null, null, null);
+        }
+
+        String attemptId = conf.get(ConfigurationUtil.TASK_ATTEMPT_ID);
+        if (attemptId == null) {
+            attemptId = UUID.randomUUID().toString();
+        }
+
+        final DocumentDBRequestLimiter limiter;
+        try {
+            Path leaseDirPath = new Path(leaseDir);
+            limiter = new DocumentDBRequestLimiter(targetRUPerSecond, leaseDirPath.getFileSystem(conf), leaseDirPath,
+                    new Path(leaseDirPath, attemptId));
+        } catch (IOException e) {
+            LOG.warn("Failed to access the lease directory, the task alone consumes targetRUPerSecond request units.",
+                    e);
+            return new DocumentDBRequestLimiter(targetRUPerSecond, null, null, null);
+        }
+
+        limiter.taskCountBound = getTaskCount(conf, attemptId);
+        limiter.renewLease(true);
+        limiter.renewer = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(LEASE_RENEWAL_MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    limiter.renewLease(limiter.resetChargeSinceRenewal() > 0);
+                }
+            }
+        }, "DocumentDB request unit lease renewer");
+        limiter.renewer.setDaemon(true);
+        limiter.renewer.start();
+        return limiter;
+    }
+
+    /**
+     * Gets the number of tasks of the job of the same type as the task attempt, the most tasks that can be active at
+     * once.
+     * @return the number of tasks, or 0 if it isn't known.
+     */
+    private static int getTaskCount(Configuration conf, String attemptId) {
+        TaskType taskType;
+        try {
+            taskType = TaskAttemptID.forName(attemptId).getTaskType();
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+
+        return conf.getInt(taskType == TaskType.REDUCE ? ConfigurationUtil.NUM_REDUCES : ConfigurationUtil.NUM_MAPS,
+                0);
+    }
+
+    /**
+     * Waits until the bucket has request units for the next request.
+     */
+    public void acquire() {
+        while (true) {
+            long waitMilliseconds;
+            synchronized (this) {
+                this.refill();
+                if (this.balance >= 0) {
+                    return;
+                }
+
+                waitMilliseconds = (long) Math.ceil(-this.balance * 1000 / this.ruPerSecond);
+            }
+
+            try {
+                Thread.sleep(waitMilliseconds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Charges the bucket with the request units a request consumed.
+     * @param requestCharge the request charge of the response.
+     */
+    public synchronized void charge(double requestCharge) {
+        this.refill();
+        this.balance -= requestCharge;
+        this.chargeSinceRenewal += requestCharge;
+    }
+
+    /**
+     * Adds the request units earned since the last refill, keeping at most a second of request units in the bucket.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        this.balance = Math.min(this.ruPerSecond, this.balance + (now - this.lastRefillNanos) * this.ruPerSecond / 1e9);
+        this.lastRefillNanos = now;
+    }
+
+    private synchronized double resetChargeSinceRenewal() {
+        double charge = this.chargeSinceRenewal;
+        this.chargeSinceRenewal = 0;
+        return charge;
+    }
+
+    /**
+     * Renews the lease of the task if it is active or releases it, and splits the budget of the job between the
+     * tasks holding a lease. An idle task keeps a share for itself, so that it doesn't overdraw the budget when it
+     * becomes active again. Until the number of leases is the same for two renewals in a row, the budget is split
+     * between at least the number of tasks of the job, since the other tasks starting with this one might not
+     * hold a lease yet.
+     */
+    private void renewLease(boolean active) {
+        try {
+            long now = System.currentTimeMillis();
+            if (active) {
+                if (!this.leased) {
+                    this.fs.create(this.leaseFile, true).close();
+                    this.leased = true;
+                }
+
+                this.fs.setTimes(this.leaseFile, now, -1);
+            } else if (this.leased) {
+                this.fs.delete(this.leaseFile, false);
+                this.leased = false;
+            }
+
+            int activeTasks = active ? 0 : 1;
+            for (FileStatus status : this.fs.listStatus(this.leaseDir)) {
+                if (now - status.getModificationTime() < LEASE_EXPIRY_MILLISECONDS) {
+                    activeTasks++;
+                }
+            }
+
+            if (this.taskCountBound > 0) {
+                if (activeTasks == this.lastActiveTasks) {
+                    this.taskCountBound = 0;
+                } else {
+                    this.lastActiveTasks = activeTasks;
+                    activeTasks = Math.max(activeTasks, this.taskCountBound);
+                }
+            }
+
+            double ruPerSecond = this.targetRUPerSecond / Math.max(1, activeTasks);
+            synchronized (this) {
+                if (ruPerSecond != this.ruPerSecond) {
+                    LOG.info(String.format("%d active tasks, consuming up to %.1f request units per second.",
+                            activeTasks, ruPerSecond));
+                    this.refill();
+                    this.ruPerSecond = ruPerSecond;
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to renew the request unit lease, keeping the current rate.", e);
+        }
+    }
+
+    /**
+     * Deletes the lease of the task, so that its budget goes to the other tasks right away.
+     */
+    private void releaseLease() {
+        if (!this.leased) {
+            return;
+        }
+
+        try {
+            this.fs.delete(this.leaseFile, false);
+            this.leased = false;
+        } catch (IOException e) {
+            LOG.warn("Failed to release the request unit lease, it lapses once it expires.", e);
+        }
+    }
+}
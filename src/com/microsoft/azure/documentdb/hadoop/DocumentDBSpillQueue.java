@@ -0,0 +1,224 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * An append-only local file of the batches waiting to be written by a DocumentDBBatchWriter in write-behind mode.
+ * The writer appends batches and the drainer peeks at them in order, blocking until a batch is appended or the queue
+ * is closed, and removes each batch once it is submitted. The queue is only empty once all the spilled batches are
+ * submitted. Every batch is stored as the index of its collection, its batch key and its serialized documents.
+ */
+class DocumentDBSpillQueue {
+    private static final Log LOG = LogFactory.getLog(DocumentDBSpillQueue.class);
+    private static final int LOG_INTERVAL = 50;
+
+    private static final byte NO_PARTITION_KEY_TYPE = 0;
+    private static final byte UNDEFINED_PARTITION_KEY_TYPE = 1;
+    private static final byte STRING_TYPE = 2;
+    private static final byte INTEGER_TYPE = 3;
+    private static final byte LONG_TYPE = 4;
+    private static final byte DOUBLE_TYPE = 5;
+    private static final byte BOOLEAN_TYPE = 6;
+
+    private final File file;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private long spilledBatches;
+    private long takenBatches;
+    private SpilledBatch head;
+    private boolean closed;
+
+    /**
+     * @param dir the local directory of the spill file.
+     */
+    DocumentDBSpillQueue(File dir) throws IOException {
+        this.file = File.createTempFile("documentdb-spill-", ".bin", dir);
+        this.file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file)));
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        LOG.info(String.format("Spilling the batches that can't be written right away to %s", this.file));
+    }
+
+    synchronized boolean isEmpty() {
+        return this.takenBatches == this.spilledBatches;
+    }
+
+    /**
+     * Waits for the drainer to submit all the spilled batches.
+     * @return true if the queue is empty, false if it is still not empty after the timeout.
+     */
+    synchronized boolean awaitEmpty(long timeoutMillis) throws InterruptedException {
+        if (!this.isEmpty()) {
+            this.wait(timeoutMillis);
+        }
+
+        return this.isEmpty();
+    }
+
+    /**
+     * Appends a batch to the spill file.
+     * @param index the index of the collection of the batch.
+     * @param batchKey the batch key of the batch.
+     * @param jsonDocuments the serialized documents of the batch.
+     */
+    synchronized void put(int index, Object batchKey, List<String> jsonDocuments) throws IOException {
+        this.out.writeInt(index);
+        if (batchKey == DocumentDBBatchWriter.NO_PARTITION_KEY) {
+            this.out.writeByte(NO_PARTITION_KEY_TYPE);
+        } else if (batchKey == DocumentDBBatchWriter.UNDEFINED_PARTITION_KEY) {
+            this.out.writeByte(UNDEFINED_PARTITION_KEY_TYPE);
+        } else if (batchKey instanceof Integer) {
+            this.out.writeByte(INTEGER_TYPE);
+            this.out.writeInt((Integer) batchKey);
+        } else if (batchKey instanceof Long) {
+            this.out.writeByte(LONG_TYPE);
+            this.out.writeLong((Long) batchKey);
+        } else if (batchKey instanceof Number) {
+            this.out.writeByte(DOUBLE_TYPE);
+            this.out.writeDouble(((Number) batchKey).doubleValue());
+        } else if (batchKey instanceof Boolean) {
+            this.out.writeByte(BOOLEAN_TYPE);
+            this.out.writeBoolean((Boolean) batchKey);
+        } else {
+            this.out.writeByte(STRING_TYPE);
+            writeString(this.out, batchKey.toString());
+        }
+
+        this.out.writeInt(jsonDocuments.size());
+        for (String json : jsonDocuments) {
+            writeString(this.out, json);
+        }
+
+        this.out.flush();
+        this.spilledBatches++;
+        if (this.spilledBatches % LOG_INTERVAL == 0) {
+            LOG.info(String.format("spilled %d batches", this.spilledBatches));
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Reads the oldest spilled batch, without removing it from the queue.
+     * @return the batch, or null if the queue is closed and empty.
+     */
+    synchronized SpilledBatch peek() throws IOException, InterruptedException {
+        if (this.head != null) {
+            return this.head;
+        }
+
+        while (this.takenBatches == this.spilledBatches) {
+            if (this.closed) {
+                return null;
+            }
+
+            this.wait();
+        }
+
+        int index = this.in.readInt();
+        Object batchKey;
+        byte type = this.in.readByte();
+        switch (type) {
+        case NO_PARTITION_KEY_TYPE:
+            batchKey = DocumentDBBatchWriter.NO_PARTITION_KEY;
+            break;
+        case UNDEFINED_PARTITION_KEY_TYPE:
+            batchKey = DocumentDBBatchWriter.UNDEFINED_PARTITION_KEY;
+            break;
+        case INTEGER_TYPE:
+            batchKey = this.in.readInt();
+            break;
+        case LONG_TYPE:
+            batchKey = this.in.readLong();
+            break;
+        case DOUBLE_TYPE:
+            batchKey = this.in.readDouble();
+            break;
+        case BOOLEAN_TYPE:
+            batchKey = this.in.readBoolean();
+            break;
+        default:
+            batchKey = readString(this.in);
+        }
+
+        // The batch was already cut to the limits of the writer, so it only needs room for its own documents.
+        int size = this.in.readInt();
+        DocumentDBDocumentBatch batch = new DocumentDBDocumentBatch(size, Long.MAX_VALUE);
+        for (int i = 0; i < size; i++) {
+            String json = readString(this.in);
+            batch.add(new Document(json), json);
+        }
+
+        this.head = new SpilledBatch(index, batchKey, batch);
+        return this.head;
+    }
+
+    /**
+     * Removes the oldest spilled batch once it is submitted.
+     */
+    synchronized void remove() {
+        this.head = null;
+        this.takenBatches++;
+        this.notifyAll();
+    }
+
+    /**
+     * Stops accepting batches, the drainer stops once it has taken the spilled batches.
+     */
+    synchronized void close() throws IOException {
+        this.closed = true;
+        this.out.close();
+        this.notifyAll();
+    }
+
+    synchronized void delete() throws IOException {
+        this.in.close();
+        if (!this.file.delete()) {
+            LOG.warn(String.format("Failed to delete the spill file %s", this.file));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A batch read back from the spill file.
+     */
+    static class SpilledBatch {
+        final int index;
+        final Object batchKey;
+        final DocumentDBDocumentBatch batch;
+
+        private SpilledBatch(int index, Object batchKey, DocumentDBDocumentBatch batch) {
+            this.index = index;
+            this.batchKey = batchKey;
+            this.batch = batch;
+        }
+    }
+}
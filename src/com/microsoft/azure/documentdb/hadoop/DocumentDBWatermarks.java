@@ -0,0 +1,230 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The _ts watermarks of the incremental reads, one for each partition key range of the input collections.
+ * A job reads the documents of a range modified after the range's committed watermark, up to the last _ts found in
+ * the range when the splits are computed. The new watermarks are saved as pending under DocumentDB.watermarkDir
+ * and only replace the committed ones when the job succeeds.
+ */
+public class DocumentDBWatermarks {
+    private static final Log LOG = LogFactory.getLog(DocumentDBWatermarks.class);
+    private static final String WATERMARKS_FILE = "watermarks";
+    private static final String PREVIOUS_WATERMARKS_FILE = "watermarks.previous";
+    private static final String PENDING_DIR = "_pending";
+
+    /**
+     * Documents can still be written with a _ts of the current second, a maximum _ts newer than this many
+     * seconds before the local clock is left for the next run.
+     */
+    private static final long OPEN_SECOND_MARGIN_SECONDS = 60;
+
+    private final Properties committed;
+    private final Properties pending;
+
+    private DocumentDBWatermarks(Properties committed) {
+        this.committed = committed;
+        this.pending = new Properties();
+        this.pending.putAll(committed);
+    }
+
+    /**
+     * Loads the committed watermarks of an incremental job.
+     * @param conf job configuration object.
+     * @return the watermarks, or null if the job doesn't read incrementally.
+     */
+    public static DocumentDBWatermarks load(Configuration conf) throws IOException {
+        String watermarkDir = ConfigurationUtil.getWatermarkDir(conf);
+        if (watermarkDir == null) {
+            return null;
+        }
+
+        Path dir = new Path(watermarkDir);
+        FileSystem fs = dir.getFileSystem(conf);
+        Path file = new Path(dir, WATERMARKS_FILE);
+        if (!fs.exists(file)) {
+            // A commit might have stopped between its two renames.
+            file = new Path(dir, PREVIOUS_WATERMARKS_FILE);
+        }
+
+        Properties committed = new Properties();
+        if (fs.exists(file)) {
+            InputStream in = fs.open(file);
+            try {
+                committed.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        LOG.info(String.format("Loaded %d watermarks from %s", committed.size(), watermarkDir));
+        return new DocumentDBWatermarks(committed);
+    }
+
+    /**
+     * Gets the filter reading the documents of a partition key range modified since its watermark, and records the
+     * range's new pending watermark.
+     * @param alias the alias of the documents in the query.
+     * @param collectionKey the database and collection ids of the range.
+     * @param partitionKeyRangeId the id of the partition key range.
+     * @param maxTimestamp the maximum _ts of the range, or null if the range is empty.
+     * @return the filter to add to the query of the range.
+     */
+    public String getFilter(String alias, String collectionKey, String partitionKeyRangeId, Double maxTimestamp) {
+        String key = collectionKey + "/" + partitionKeyRangeId;
+        Long watermark = this.getWatermark(collectionKey, key);
+
+        long upperBound = watermark != null ? watermark : 0;
+        if (maxTimestamp != null) {
+            long max = maxTimestamp.longValue();
+            long openSecond = System.currentTimeMillis() / 1000 - OPEN_SECOND_MARGIN_SECONDS;
+            upperBound = Math.max(upperBound, max < openSecond ? max : max - 1);
+        }
+
+        this.pending.setProperty(key, Long.toString(upperBound));
+        return this.getPendingFilter(alias, collectionKey, partitionKeyRangeId);
+    }
+
+    /**
+     * Gets the filter reading the documents of a partition key range between its watermark and the pending
+     * watermark recorded by getFilter.
+     * @param alias the alias of the documents in the query.
+     * @param collectionKey the database and collection ids of the range.
+     * @param partitionKeyRangeId the id of the partition key range.
+     * @return the filter to add to the query of the range.
+     */
+    public String getPendingFilter(String alias, String collectionKey, String partitionKeyRangeId) {
+        String key = collectionKey + "/" + partitionKeyRangeId;
+        Long watermark = this.getWatermark(collectionKey, key);
+        long upperBound = Long.parseLong(this.pending.getProperty(key));
+
+        String property = QueryUtil.getPropertyExpression(alias, "_ts");
+        if (watermark == null) {
+            return String.format("%s <= %d", property, upperBound);
+        }
+
+        return String.format("%s > %d AND %s <= %d", property, watermark, property, upperBound);
+    }
+
+    /**
+     * Gets the committed watermark of a partition key range.
+     * @param collectionKey the database and collection ids of the range.
+     * @param partitionKeyRangeId the id of the partition key range.
+     * @return the _ts after which the documents of the range are read, or null if the range was never read.
+     */
+    public Long getRangeWatermark(String collectionKey, String partitionKeyRangeId) {
+        return this.getWatermark(collectionKey, collectionKey + "/" + partitionKeyRangeId);
+    }
+
+    /**
+     * Gets the watermark of a range. A range created by a partition split inherits the lowest watermark of the
+     * collection, so that the documents of its parent range aren't read again.
+     */
+    private Long getWatermark(String collectionKey, String key) {
+        String value = this.committed.getProperty(key);
+        if (value != null) {
+            return Long.valueOf(value);
+        }
+
+        Long watermark = null;
+        for (String name : this.committed.stringPropertyNames()) {
+            if (name.startsWith(collectionKey + "/")) {
+                long rangeWatermark = Long.parseLong(this.committed.getProperty(name));
+                watermark = watermark == null ? rangeWatermark : Math.min(watermark, rangeWatermark);
+            }
+        }
+
+        return watermark;
+    }
+
+    /**
+     * Saves the new watermarks as the pending watermarks of the job.
+     * @param conf job configuration object.
+     */
+    public void savePending(Configuration conf) throws IOException {
+        Path pendingFile = getPendingFile(conf);
+        FileSystem fs = pendingFile.getFileSystem(conf);
+        OutputStream out = fs.create(pendingFile, true);
+        try {
+            this.pending.store(out, "DocumentDB incremental read watermarks");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replaces the committed watermarks with the pending watermarks of a job. Called by DocumentDBOutputCommitter
+     * when the job succeeds, jobs writing to other outputs call it once the job has completed successfully.
+     * @param conf job configuration object.
+     * @return true if the job had pending watermarks.
+     */
+    public static boolean commit(Configuration conf) throws IOException {
+        if (ConfigurationUtil.getWatermarkDir(conf) == null) {
+            return false;
+        }
+
+        Path pendingFile = getPendingFile(conf);
+        FileSystem fs = pendingFile.getFileSystem(conf);
+        if (!fs.exists(pendingFile)) {
+            return false;
+        }
+
+        Path dir = new Path(ConfigurationUtil.getWatermarkDir(conf));
+        Path file = new Path(dir, WATERMARKS_FILE);
+        Path previousFile = new Path(dir, PREVIOUS_WATERMARKS_FILE);
+        if (fs.exists(file)) {
+            fs.delete(previousFile, false);
+            if (!fs.rename(file, previousFile)) {
+                throw new IOException("Failed to move the committed watermarks to " + previousFile);
+            }
+        }
+
+        if (!fs.rename(pendingFile, file)) {
+            throw new IOException("Failed to commit the watermarks of " + pendingFile);
+        }
+
+        fs.delete(previousFile, false);
+        LOG.info("Committed the watermarks of " + pendingFile.getName());
+        return true;
+    }
+
+    /**
+     * Discards the pending watermarks of a job.
+     * @param conf job configuration object.
+     */
+    public static void abort(Configuration conf) throws IOException {
+        if (ConfigurationUtil.getWatermarkDir(conf) == null) {
+            return;
+        }
+
+        Path pendingFile = getPendingFile(conf);
+        pendingFile.getFileSystem(conf).delete(pendingFile, false);
+    }
+
+    /**
+     * The pending watermarks of a job are named after its staging directory, which is named after the job id.
+     */
+    private static Path getPendingFile(Configuration conf) throws IOException {
+        String jobDir = conf.get(ConfigurationUtil.JOB_DIR);
+        if (StringUtils.isEmpty(jobDir)) {
+            throw new IOException("Incremental reads need the job directory " + ConfigurationUtil.JOB_DIR);
+        }
+
+        Path pendingDir = new Path(ConfigurationUtil.getWatermarkDir(conf), PENDING_DIR);
+        return new Path(pendingDir, new Path(jobDir).getName());
+    }
+}
@@ -6,21 +6,44 @@ package com.microsoft.azure.documentdb.hadoop;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.json.JSONObject;
 
 import com.microsoft.azure.documentdb.Document;
 
 public class DocumentDBWritable implements WritableComparable<Object> {
 
     static {
+        // The registered comparator isn't Configurable, so that the job configuration given to
+        // WritableComparator.get doesn't turn it into a comparator by DocumentDB.sortKeyFields.
         WritableComparator.define(DocumentDBWritable.class,
-                new DocumentDBWritableComparator());
+                new Comparator());
     }
 
+    private static final ThreadLocal<Comparator> COMPARATOR =
+            new ThreadLocal<Comparator>() {
+                @Override
+                protected Comparator initialValue() {
+                    return new Comparator();
+                }
+            };
+
     private Document doc;
+    private DocumentDBBinaryEncoding encoding;
+    private DataOutputBuffer outputBuffer;
+    private DataInputBuffer inputBuffer;
+    private byte[] readBuffer;
+    private int encodedLength = -1;
+    private StringBuilder json;
+    private Map<String, DocumentDBKeyPath> keyPaths;
 
     public DocumentDBWritable() {
         this.doc = new Document();
@@ -32,29 +55,125 @@ public class DocumentDBWritable implements WritableComparable<Object> {
 
     public void setDoc(final Document doc) {
         this.doc = doc;
+        this.encodedLength = -1;
     }
 
+    /**
+     * Gets the document, parsing it on first access after readFields. The document may then be modified, and is
+     * encoded again by write.
+     */
     public Document getDoc() {
+        if (this.doc == null && this.encodedLength >= 0) {
+            this.doc = new Document(this.decode());
+            this.encodedLength = -1;
+        }
+
         return this.doc;
     }
 
+    /**
+     * Gets the value of a property without parsing the document, when it was read by readFields and not accessed with
+     * getDoc yet.
+     * @param path the property names of the path, separated by dots, such as id or customer.name.
+     * @return the Boolean, Integer, Long, Double, String, JSONObject, JSONArray or JSONObject.NULL value, or null if the
+     * document doesn't have the property.
+     */
+    public Object get(final String path) throws IOException {
+        if (this.doc == null && this.encodedLength >= 0) {
+            if (this.keyPaths == null) {
+                this.keyPaths = new HashMap<String, DocumentDBKeyPath>();
+            }
+
+            DocumentDBKeyPath keyPath = this.keyPaths.get(path);
+            if (keyPath == null) {
+                keyPath = new DocumentDBKeyPath(path);
+                this.keyPaths.put(path, keyPath);
+            }
+
+            int offset = keyPath.find(this.readBuffer, 0);
+            if (!DocumentDBKeyPath.isContainer(this.readBuffer, offset)) {
+                return DocumentDBKeyPath.readScalar(this.readBuffer, offset);
+            }
+        }
+
+        String[] names = path.split("\\.");
+        Object value = this.getDoc().get(names[0]);
+        for (int i = 1; i < names.length && value != null; i++) {
+            value = value instanceof JSONObject ? ((JSONObject) value).opt(names[i]) : null;
+        }
+
+        return value;
+    }
+
     /**
      * {@inheritDoc}
+     * Writes the length of the encoded document as a variable length int, followed by the document in the binary
+     * encoding of DocumentDBBinaryEncoding. A document read by readFields and never accessed with getDoc is written
+     * without being parsed or encoded again.
      * 
      * @see Writable#write(DataOutput)
      */
     public void write(final DataOutput out) throws IOException {
-        String str = this.doc.toString();
-        out.writeUTF(str);
+        if (this.doc == null && this.encodedLength >= 0) {
+            WritableUtils.writeVInt(out, this.encodedLength);
+            out.write(this.readBuffer, 0, this.encodedLength);
+            return;
+        }
+
+        if (this.outputBuffer == null) {
+            this.outputBuffer = new DataOutputBuffer();
+        }
+
+        this.outputBuffer.reset();
+        this.getEncoding().encode(this.doc.toString(), this.outputBuffer);
+        WritableUtils.writeVInt(out, this.outputBuffer.getLength());
+        out.write(this.outputBuffer.getData(), 0, this.outputBuffer.getLength());
     }
 
     /**
      * {@inheritDoc}
+     * Keeps the encoded document, which is only parsed on first access with getDoc. The buffer holding the encoded
+     * document is reused from one record to the next.
      * 
      * @see Writable#readFields(DataInput)
      */
     public void readFields(final DataInput in) throws IOException {
-        this.doc = new Document(in.readLine());
+        int length = WritableUtils.readVInt(in);
+        if (this.readBuffer == null || this.readBuffer.length < length) {
+            this.readBuffer = new byte[Math.max(length, this.readBuffer == null ? 0 : this.readBuffer.length * 2)];
+        }
+
+        in.readFully(this.readBuffer, 0, length);
+        this.doc = null;
+        this.encodedLength = length;
+    }
+
+    /**
+     * Decodes the encoded document to JSON text.
+     */
+    private String decode() {
+        if (this.inputBuffer == null) {
+            this.inputBuffer = new DataInputBuffer();
+            this.json = new StringBuilder(this.encodedLength * 2);
+        }
+
+        this.inputBuffer.reset(this.readBuffer, this.encodedLength);
+        this.json.setLength(0);
+        try {
+            this.getEncoding().decode(this.inputBuffer, this.json);
+        } catch (IOException e) {
+            throw new IllegalStateException("The encoded document is corrupt.", e);
+        }
+
+        return this.json.toString();
+    }
+
+    private DocumentDBBinaryEncoding getEncoding() {
+        if (this.encoding == null) {
+            this.encoding = new DocumentDBBinaryEncoding();
+        }
+
+        return this.encoding;
     }
 
     /**
@@ -62,11 +181,11 @@ public class DocumentDBWritable implements WritableComparable<Object> {
      */
     @Override
     public String toString() {
-        return this.doc.toString();
+        return this.doc == null && this.encodedLength >= 0 ? this.decode() : this.doc.toString();
     }
 
     public int compareTo(final Object o) {
-        return new DocumentDBWritableComparator().compare(this, o);
+        return COMPARATOR.get().compare(this, (DocumentDBWritable) o);
     }
 
     /**
@@ -74,6 +193,60 @@ public class DocumentDBWritable implements WritableComparable<Object> {
      */
     @Override
     public int hashCode() {
-        return this.doc != null ? this.doc.hashCode() : 0;
+        Document doc = this.getDoc();
+        return doc != null ? doc.hashCode() : 0;
+    }
+
+    /**
+     * Compares serialized DocumentDBWritable keys by their encoded bytes, without deserializing them.
+     */
+    public static class Comparator extends WritableComparator {
+        private DataOutputBuffer buffer1;
+        private DataOutputBuffer buffer2;
+
+        public Comparator() {
+            super(DocumentDBWritable.class);
+        }
+
+        protected Comparator(final Class<? extends WritableComparable> keyClass) {
+            super(keyClass);
+        }
+
+        protected Comparator(final Class<? extends WritableComparable> keyClass, final boolean createInstances) {
+            super(keyClass, createInstances);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+            return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+        }
+
+        /**
+         * Compares deserialized keys by serializing them, so that they are ordered like serialized keys.
+         */
+        @Override
+        public synchronized int compare(final WritableComparable a, final WritableComparable b) {
+            if (this.buffer1 == null) {
+                this.buffer1 = new DataOutputBuffer();
+                this.buffer2 = new DataOutputBuffer();
+            }
+
+            try {
+                this.buffer1.reset();
+                ((DocumentDBWritable) a).write(this.buffer1);
+                this.buffer2.reset();
+                ((DocumentDBWritable) b).write(this.buffer2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+
+            return this.compare(this.buffer1.getData(), 0, this.buffer1.getLength(),
+                    this.buffer2.getData(), 0, this.buffer2.getLength());
+        }
     }
 }
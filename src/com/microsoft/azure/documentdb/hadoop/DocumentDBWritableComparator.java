@@ -3,18 +3,29 @@
 //------------------------------------------------------------
 package com.microsoft.azure.documentdb.hadoop;
 
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.WritableComparable;
-import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
-public class DocumentDBWritableComparator extends WritableComparator {
+/**
+ * Compares serialized DocumentDBWritable keys without deserializing them. Keys are compared by the property paths of
+ * DocumentDB.sortKeyFields when the comparator is configured with them, such as the sort comparator of a job set with
+ * Job.setSortComparatorClass(DocumentDBWritableComparator.class), and by their encoded bytes otherwise.
+ */
+public class DocumentDBWritableComparator extends DocumentDBWritable.Comparator implements Configurable {
+    private Configuration conf;
+    private DocumentDBKeyPath[] keyPaths;
 
     public DocumentDBWritableComparator() {
-        super(DocumentDBWritable.class, true);
+        super(DocumentDBWritable.class);
     }
 
     protected DocumentDBWritableComparator(
             final Class<? extends WritableComparable> keyClass) {
-        super(keyClass, true);
+        super(keyClass);
     }
 
     protected DocumentDBWritableComparator(
@@ -23,17 +34,45 @@ public class DocumentDBWritableComparator extends WritableComparator {
         super(keyClass, createInstances);
     }
 
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.keyPaths = DocumentDBKeyPath.create(this.getKeyFields(conf));
+    }
+
+    public Configuration getConf() {
+        return this.conf;
+    }
+
+    /**
+     * @return the property paths compared by the comparator, or null to compare the whole documents.
+     */
+    protected String[] getKeyFields(Configuration conf) {
+        return ConfigurationUtil.getSortKeyFields(conf);
+    }
+
     /**
-     * @inheritDoc
+     * {@inheritDoc}
      */
     @Override
-    public int compare(final WritableComparable a, final WritableComparable b) {
-        if (a instanceof DocumentDBWritable && b instanceof DocumentDBWritable) {
-            return new DocumentDBWritableComparator().compare(
-                    ((DocumentDBWritable) a).getDoc(),
-                    ((DocumentDBWritable) b).getDoc());
-        } else {
-            return super.compare(a, b);
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        if (this.keyPaths == null) {
+            return super.compare(b1, s1, l1, b2, s2, l2);
+        }
+
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        try {
+            for (DocumentDBKeyPath keyPath : this.keyPaths) {
+                int result = DocumentDBKeyPath.compareValues(b1, keyPath.find(b1, s1 + n1),
+                        b2, keyPath.find(b2, s2 + n2));
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return 0;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
         }
     }
 }
@@ -0,0 +1,19 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Groups serialized DocumentDBWritable keys into reduce calls by the property paths of DocumentDB.groupKeyFields, set
+ * with Job.setGroupingComparatorClass(DocumentDBWritableGroupingComparator.class). With the sort comparator set to
+ * DocumentDBWritableComparator and the partitioner set to DocumentDBKeyPartitioner, the values of a group reach the
+ * reducer ordered by the remaining DocumentDB.sortKeyFields.
+ */
+public class DocumentDBWritableGroupingComparator extends DocumentDBWritableComparator {
+    @Override
+    protected String[] getKeyFields(Configuration conf) {
+        return ConfigurationUtil.getGroupKeyFields(conf);
+    }
+}
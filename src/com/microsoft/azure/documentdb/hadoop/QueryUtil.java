@@ -0,0 +1,230 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ *
+ * Helpers to rewrite the documentdb sql queries pushed down to the input collections.
+ *
+ */
+public class QueryUtil {
+    /**
+     * The query used when no DocumentDB.query is set.
+     */
+    public static final String DEFAULT_QUERY = "SELECT * FROM root";
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern SELECT_ALL = Pattern.compile("(?i)^\\s*SELECT\\s+\\*\\s+FROM\\s");
+
+    /**
+     * Returns the query to run for the passed DocumentDB.query value.
+     * @param query the configured query, may be null or empty.
+     * @return the configured query or the default query if none is set.
+     */
+    public static String getQueryOrDefault(String query) {
+        return StringUtils.isBlank(query) ? DEFAULT_QUERY : query;
+    }
+
+    /**
+     * Gets the alias of the root document in a query, e.g. "r" for "SELECT * FROM root r".
+     * @param query the documentdb sql query.
+     * @return the alias the query uses for the documents of the collection.
+     * @throws IllegalArgumentException if the query doesn't select from the collection root.
+     */
+    public static String getRootAlias(String query) {
+        query = getQueryOrDefault(query);
+        int fromIndex = indexOfKeyword(query, "FROM", 0);
+        if (fromIndex < 0) {
+            throw new IllegalArgumentException("The query doesn't have a FROM clause: " + query);
+        }
+
+        String[] tokens = StringUtils.split(query.substring(fromIndex + "FROM".length()));
+        if (tokens.length == 0 || !IDENTIFIER.matcher(tokens[0]).matches()) {
+            throw new IllegalArgumentException("The query doesn't select from the collection root: " + query);
+        }
+
+        int aliasIndex = 1;
+        if (tokens.length > 1 && tokens[1].equalsIgnoreCase("AS")) {
+            aliasIndex = 2;
+        }
+
+        if (tokens.length > aliasIndex && tokens[aliasIndex].equalsIgnoreCase("IN")) {
+            throw new IllegalArgumentException("The query doesn't select from the collection root: " + query);
+        }
+
+        if (tokens.length > aliasIndex && IDENTIFIER.matcher(tokens[aliasIndex]).matches()
+                && !isClauseKeyword(tokens[aliasIndex])) {
+            return tokens[aliasIndex];
+        }
+
+        return tokens[0];
+    }
+
+    /**
+     * Builds the expression that accesses a property of a document, e.g. r.address.city or r["first-name"].
+     * @param alias the alias of the document.
+     * @param propertyPath a dot separated property path.
+     * @return the property expression.
+     */
+    public static String getPropertyExpression(String alias, String propertyPath) {
+        StringBuilder expression = new StringBuilder(alias);
+        for (String property : StringUtils.split(propertyPath, '.')) {
+            if (IDENTIFIER.matcher(property).matches()) {
+                expression.append('.').append(property);
+            } else {
+                expression.append("[").append(toStringLiteral(property)).append("]");
+            }
+        }
+
+        return expression.toString();
+    }
+
+    /**
+     * Adds a filter to a query. The filter is ANDed with the query's WHERE clause if it has one.
+     * @param query the documentdb sql query, may be null or empty.
+     * @param filter the filter expression, written against the query's root alias.
+     * @return the query with the filter applied.
+     */
+    public static String addFilter(String query, String filter) {
+        query = getQueryOrDefault(query).trim();
+        if (StringUtils.isBlank(filter)) {
+            return query;
+        }
+
+        int fromIndex = indexOfKeyword(query, "FROM", 0);
+        int whereIndex = indexOfKeyword(query, "WHERE", fromIndex);
+        int orderByIndex = indexOfOrderBy(query, fromIndex);
+        int end = orderByIndex >= 0 ? orderByIndex : query.length();
+        String tail = orderByIndex >= 0 ? " " + query.substring(orderByIndex) : "";
+
+        if (whereIndex >= 0) {
+            String condition = query.substring(whereIndex + "WHERE".length(), end).trim();
+            return String.format("%s WHERE (%s) AND (%s)%s", query.substring(0, whereIndex).trim(), filter,
+                    condition, tail);
+        }
+
+        return String.format("%s WHERE %s%s", query.substring(0, end).trim(), filter, tail);
+    }
+
+    /**
+     * Replaces the * of a SELECT * query with a list of top level properties, e.g. SELECT r.a, r.b FROM root r.
+     * Properties that aren't identifiers would need an alias in the SELECT clause and prevent the projection.
+     * @param query the documentdb sql query, may be null or empty.
+     * @param propertyNames the names of the properties to select.
+     * @return the projected query, or the query itself if it can't be projected.
+     */
+    public static String project(String query, Collection<String> propertyNames) {
+        query = getQueryOrDefault(query).trim();
+        Matcher selectAll = SELECT_ALL.matcher(query);
+        if (propertyNames.isEmpty() || !selectAll.find()) {
+            return query;
+        }
+
+        String alias = getRootAlias(query);
+        List<String> properties = new ArrayList<String>();
+        for (String propertyName : propertyNames) {
+            if (!IDENTIFIER.matcher(propertyName).matches()) {
+                return query;
+            }
+
+            String property = alias + "." + propertyName;
+            if (!properties.contains(property)) {
+                properties.add(property);
+            }
+        }
+
+        return String.format("SELECT %s FROM %s", StringUtils.join(properties, ", "),
+                query.substring(selectAll.end()));
+    }
+
+    /**
+     * Returns a documentdb sql string literal for the passed value.
+     */
+    public static String toStringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                literal.append('\\');
+            }
+
+            literal.append(c);
+        }
+
+        return literal.append('"').toString();
+    }
+
+    /**
+     * Returns a documentdb sql number literal for the passed value.
+     */
+    public static String toNumberLiteral(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < (1L << 53)) {
+            return Long.toString((long) value);
+        }
+
+        return Double.toString(value);
+    }
+
+    private static boolean isClauseKeyword(String token) {
+        return token.equalsIgnoreCase("WHERE") || token.equalsIgnoreCase("ORDER") || token.equalsIgnoreCase("JOIN");
+    }
+
+    private static int indexOfOrderBy(String query, int fromIndex) {
+        int orderIndex = fromIndex;
+        while ((orderIndex = indexOfKeyword(query, "ORDER", orderIndex)) >= 0) {
+            String rest = query.substring(orderIndex + "ORDER".length()).trim();
+            if (rest.length() >= 2 && rest.substring(0, 2).equalsIgnoreCase("BY")) {
+                return orderIndex;
+            }
+
+            orderIndex++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds a keyword in a query, skipping string literals and nested expressions.
+     * @return the index of the keyword or -1 if it isn't found.
+     */
+    private static int indexOfKeyword(String query, String keyword, int startIndex) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = Math.max(startIndex, 0); i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (depth == 0 && query.regionMatches(true, i, keyword, 0, keyword.length())
+                    && (i == 0 || !isIdentifierPart(query.charAt(i - 1)))
+                    && (i + keyword.length() == query.length()
+                        || !isIdentifierPart(query.charAt(i + keyword.length())))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
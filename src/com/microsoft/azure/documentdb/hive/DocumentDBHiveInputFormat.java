@@ -0,0 +1,38 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+
+import com.microsoft.azure.documentdb.hadoop.ConfigurationUtil;
+import com.microsoft.azure.documentdb.mapred.hadoop.DocumentDBInputFormat;
+
+/**
+ * The input format of DocumentDB Hive tables. It pushes the filter and the columns of the table scan down to the
+ * documentdb query of the splits when DocumentDB.pushdown is enabled.
+ */
+public class DocumentDBHiveInputFormat extends DocumentDBInputFormat {
+
+    /**
+     * Gets the splits of the input collections for the pushed down query.
+     */
+    @Override
+    public InputSplit[] getSplits(JobConf conf, int numberOfSplits) throws IOException {
+        if (!ConfigurationUtil.getPushdown(conf)) {
+            return super.getSplits(conf, numberOfSplits);
+        }
+
+        JobConf pushedDownConf = new JobConf(conf);
+        String query = DocumentDBQueryPushdown.getPushedDownQuery(conf);
+        if (query != null) {
+            pushedDownConf.set(ConfigurationUtil.QUERY, query);
+        }
+
+        return super.getSplits(pushedDownConf, numberOfSplits);
+    }
+}
@@ -0,0 +1,64 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.json.JSONArray;
+
+/**
+ * Reads a Hive array from a JSONArray, converting the elements as they are read.
+ */
+public class DocumentDBListObjectInspector implements ListObjectInspector {
+    private final ListTypeInfo typeInfo;
+    private final ObjectInspector elementInspector;
+
+    public DocumentDBListObjectInspector(ListTypeInfo typeInfo, ObjectInspector elementInspector) {
+        this.typeInfo = typeInfo;
+        this.elementInspector = elementInspector;
+    }
+
+    public Category getCategory() {
+        return Category.LIST;
+    }
+
+    public String getTypeName() {
+        return this.typeInfo.getTypeName();
+    }
+
+    public ObjectInspector getListElementObjectInspector() {
+        return this.elementInspector;
+    }
+
+    public Object getListElement(Object data, int index) {
+        if (data == null || index < 0 || index >= ((JSONArray) data).length()) {
+            return null;
+        }
+
+        return DocumentDBObjectInspectorFactory.toHiveValue(((JSONArray) data).opt(index), this.elementInspector);
+    }
+
+    public int getListLength(Object data) {
+        return data != null ? ((JSONArray) data).length() : -1;
+    }
+
+    public List<?> getList(Object data) {
+        if (data == null) {
+            return null;
+        }
+
+        JSONArray array = (JSONArray) data;
+        List<Object> list = new ArrayList<Object>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(DocumentDBObjectInspectorFactory.toHiveValue(array.opt(i), this.elementInspector));
+        }
+
+        return list;
+    }
+}
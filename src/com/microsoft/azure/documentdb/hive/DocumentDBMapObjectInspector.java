@@ -0,0 +1,77 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.json.JSONObject;
+
+/**
+ * Reads a Hive map from a JSONObject. The keys are the property names converted to the key type, and the values are
+ * converted as they are read.
+ */
+public class DocumentDBMapObjectInspector implements MapObjectInspector {
+    private final MapTypeInfo typeInfo;
+    private final ObjectInspector keyInspector;
+    private final ObjectInspector valueInspector;
+
+    public DocumentDBMapObjectInspector(MapTypeInfo typeInfo, ObjectInspector keyInspector,
+            ObjectInspector valueInspector) {
+        this.typeInfo = typeInfo;
+        this.keyInspector = keyInspector;
+        this.valueInspector = valueInspector;
+    }
+
+    public Category getCategory() {
+        return Category.MAP;
+    }
+
+    public String getTypeName() {
+        return this.typeInfo.getTypeName();
+    }
+
+    public ObjectInspector getMapKeyObjectInspector() {
+        return this.keyInspector;
+    }
+
+    public ObjectInspector getMapValueObjectInspector() {
+        return this.valueInspector;
+    }
+
+    public Object getMapValueElement(Object data, Object key) {
+        if (data == null || key == null) {
+            return null;
+        }
+
+        return DocumentDBObjectInspectorFactory.toHiveValue(((JSONObject) data).opt(key.toString()),
+                this.valueInspector);
+    }
+
+    public Map<?, ?> getMap(Object data) {
+        if (data == null) {
+            return null;
+        }
+
+        JSONObject object = (JSONObject) data;
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        Iterator<?> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            map.put(DocumentDBObjectInspectorFactory.toHiveValue(key, this.keyInspector),
+                    DocumentDBObjectInspectorFactory.toHiveValue(object.opt(key), this.valueInspector));
+        }
+
+        return map;
+    }
+
+    public int getMapSize(Object data) {
+        return data != null ? ((JSONObject) data).length() : -1;
+    }
+}
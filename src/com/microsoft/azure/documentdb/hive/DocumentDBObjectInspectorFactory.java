@@ -0,0 +1,134 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.CharTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.VarcharTypeInfo;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Creates the ObjectInspectors reading Hive rows straight from the documents, and converts document values to the
+ * java objects of Hive types. Structs are read from Documents and JSONObjects, maps from JSONObjects and lists from
+ * JSONArrays, and a value is only converted when Hive reads it.
+ */
+public class DocumentDBObjectInspectorFactory {
+    /**
+     * Creates the ObjectInspector of a Hive type.
+     * @param typeInfo the Hive type.
+     * @param mappings the document property names of the struct fields, by field name.
+     */
+    public static ObjectInspector create(TypeInfo typeInfo, Map<String, String> mappings) {
+        switch (typeInfo.getCategory()) {
+        case PRIMITIVE:
+            return PrimitiveObjectInspectorFactory.getPrimitiveJavaObjectInspector((PrimitiveTypeInfo) typeInfo);
+        case STRUCT:
+            StructTypeInfo structTypeInfo = (StructTypeInfo) typeInfo;
+            List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+            for (TypeInfo fieldTypeInfo : structTypeInfo.getAllStructFieldTypeInfos()) {
+                fieldInspectors.add(create(fieldTypeInfo, mappings));
+            }
+
+            return new DocumentDBStructObjectInspector(structTypeInfo, fieldInspectors, mappings);
+        case LIST:
+            ListTypeInfo listTypeInfo = (ListTypeInfo) typeInfo;
+            return new DocumentDBListObjectInspector(listTypeInfo,
+                    create(listTypeInfo.getListElementTypeInfo(), mappings));
+        case MAP:
+            MapTypeInfo mapTypeInfo = (MapTypeInfo) typeInfo;
+            return new DocumentDBMapObjectInspector(mapTypeInfo, create(mapTypeInfo.getMapKeyTypeInfo(), mappings),
+                    create(mapTypeInfo.getMapValueTypeInfo(), mappings));
+        default:
+            throw new IllegalArgumentException(String.format("The Hive type %s isn't supported.",
+                    typeInfo.getTypeName()));
+        }
+    }
+
+    /**
+     * Converts a document value to the object read by an ObjectInspector of the factory.
+     * @return the converted value, or null if the value is missing, null or can't be converted.
+     */
+    static Object toHiveValue(Object value, ObjectInspector inspector) {
+        if (value == null || value == JSONObject.NULL) {
+            return null;
+        }
+
+        switch (inspector.getCategory()) {
+        case PRIMITIVE:
+            return toPrimitive(value, ((PrimitiveObjectInspector) inspector).getTypeInfo());
+        case STRUCT:
+        case MAP:
+            return value instanceof JSONObject ? value : null;
+        case LIST:
+            return value instanceof JSONArray ? value : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Converts a document value to the java object of a primitive Hive type. Strings are parsed, and objects and
+     * arrays read as strings keep their JSON text. Numbers read as timestamps are seconds since the epoch, like the
+     * _ts of documents.
+     */
+    private static Object toPrimitive(Object value, PrimitiveTypeInfo typeInfo) {
+        try {
+            switch (typeInfo.getPrimitiveCategory()) {
+            case BOOLEAN:
+                return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+            case BYTE:
+                return value instanceof Number ? ((Number) value).byteValue() : Byte.valueOf(value.toString());
+            case SHORT:
+                return value instanceof Number ? ((Number) value).shortValue() : Short.valueOf(value.toString());
+            case INT:
+                return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+            case LONG:
+                return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+            case FLOAT:
+                return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString());
+            case DOUBLE:
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString());
+            case STRING:
+                return value.toString();
+            case VARCHAR:
+                return new HiveVarchar(value.toString(), ((VarcharTypeInfo) typeInfo).getLength());
+            case CHAR:
+                return new HiveChar(value.toString(), ((CharTypeInfo) typeInfo).getLength());
+            case DECIMAL:
+                return HiveDecimal.create(new BigDecimal(value.toString()));
+            case DATE:
+                return Date.valueOf(value.toString());
+            case TIMESTAMP:
+                return value instanceof Number ? new Timestamp((long) (((Number) value).doubleValue() * 1000))
+                        : Timestamp.valueOf(value.toString());
+            case BINARY:
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+            default:
+                return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
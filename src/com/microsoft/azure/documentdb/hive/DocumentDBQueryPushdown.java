@@ -0,0 +1,220 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import com.microsoft.azure.documentdb.hadoop.ConfigurationUtil;
+import com.microsoft.azure.documentdb.hadoop.QueryUtil;
+
+/**
+ * Translates the filter and the columns of a Hive table scan to the documentdb query of the input collections.
+ * Comparisons of a column with a constant that are ANDed in the filter become the WHERE clause, and the read
+ * columns become the SELECT clause of queries selecting whole documents.
+ * Hive keeps evaluating the whole filter, the pushed down conditions only reduce the documents read. Hive converts
+ * the values it reads to the column types, such as a number read by a string column or 30.7 read by an int column,
+ * while documentdb compares the stored values, so the comparisons are only pushed down with
+ * DocumentDB.pushdownTypedColumns, when the stored values have the types of the columns.
+ */
+public class DocumentDBQueryPushdown {
+    private static final Log LOG = LogFactory.getLog(DocumentDBQueryPushdown.class);
+
+    /**
+     * The table property prefix mapping Hive columns to document properties.
+     */
+    static final String MAPPING_PREFIX = "mapping.";
+
+    /**
+     * Checks whether a predicate has at least one condition that can be pushed down to documentdb.
+     * @param predicate the filter of a table scan.
+     * @return true if the predicate can be pushed down in part.
+     */
+    public static boolean isPushable(ExprNodeDesc predicate) {
+        List<String> conditions = new ArrayList<String>();
+        addConditions(predicate, null, "r", conditions);
+        return !conditions.isEmpty();
+    }
+
+    /**
+     * Rewrites the query of a job with the filter and the read columns of the Hive table scan.
+     * @param conf the job configuration passed by Hive to the input format.
+     * @return the rewritten query, or the configured query if nothing can be pushed down.
+     */
+    public static String getPushedDownQuery(Configuration conf) {
+        String query = ConfigurationUtil.getQuery(conf);
+        if (!ConfigurationUtil.getPushdown(conf)) {
+            return query;
+        }
+
+        String alias;
+        try {
+            alias = QueryUtil.getRootAlias(query);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("The query can't be rewritten, no filter or column is pushed down: " + e.getMessage());
+            return query;
+        }
+
+        String pushedQuery = QueryUtil.getQueryOrDefault(query);
+        String serializedFilter = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+        if (!StringUtils.isEmpty(serializedFilter) && ConfigurationUtil.getPushdownTypedColumns(conf)) {
+            ExprNodeGenericFuncDesc filter = Utilities.deserializeExpression(serializedFilter);
+            List<String> conditions = new ArrayList<String>();
+            addConditions(filter, conf, alias, conditions);
+            if (!conditions.isEmpty()) {
+                pushedQuery = QueryUtil.addFilter(pushedQuery, StringUtils.join(conditions, " AND "));
+            }
+        }
+
+        pushedQuery = projectColumns(pushedQuery, conf);
+        LOG.info("Pushed down query: " + pushedQuery);
+        return pushedQuery;
+    }
+
+    /**
+     * Replaces SELECT * with the properties of the read columns.
+     */
+    private static String projectColumns(String query, Configuration conf) {
+        String columns = conf.get(ColumnProjectionUtils.READ_COLUMN_NAMES_CONF_STR);
+        if (ColumnProjectionUtils.isReadAllColumns(conf) || StringUtils.isEmpty(columns)) {
+            return query;
+        }
+
+        List<String> properties = new ArrayList<String>();
+        for (String column : StringUtils.split(columns, ',')) {
+            properties.add(getPropertyName(conf, column));
+        }
+
+        return QueryUtil.project(query, properties);
+    }
+
+    /**
+     * Collects the documentdb conditions of the comparisons ANDed in a predicate, other expressions are skipped.
+     */
+    private static void addConditions(ExprNodeDesc predicate, Configuration conf, String alias,
+            List<String> conditions) {
+        if (!(predicate instanceof ExprNodeGenericFuncDesc)) {
+            return;
+        }
+
+        ExprNodeGenericFuncDesc function = (ExprNodeGenericFuncDesc) predicate;
+        GenericUDF udf = function.getGenericUDF();
+        List<ExprNodeDesc> children = function.getChildren();
+        if (udf instanceof GenericUDFOPAnd) {
+            for (ExprNodeDesc child : children) {
+                addConditions(child, conf, alias, conditions);
+            }
+
+            return;
+        }
+
+        String operator = getOperator(udf);
+        if (operator == null || children.size() != 2) {
+            return;
+        }
+
+        ExprNodeColumnDesc column;
+        ExprNodeConstantDesc constant;
+        if (children.get(0) instanceof ExprNodeColumnDesc && children.get(1) instanceof ExprNodeConstantDesc) {
+            column = (ExprNodeColumnDesc) children.get(0);
+            constant = (ExprNodeConstantDesc) children.get(1);
+        } else if (children.get(1) instanceof ExprNodeColumnDesc
+                && children.get(0) instanceof ExprNodeConstantDesc) {
+            column = (ExprNodeColumnDesc) children.get(1);
+            constant = (ExprNodeConstantDesc) children.get(0);
+            operator = flipOperator(operator);
+        } else {
+            return;
+        }
+
+        String literal = toLiteral(column.getTypeInfo(), constant.getValue());
+        if (literal != null) {
+            String property = getPropertyName(conf, column.getColumn());
+            conditions.add(String.format("%s %s %s", QueryUtil.getPropertyExpression(alias, property), operator,
+                    literal));
+        }
+    }
+
+    private static String getOperator(GenericUDF udf) {
+        if (udf instanceof GenericUDFOPEqual) {
+            return "=";
+        } else if (udf instanceof GenericUDFOPNotEqual) {
+            return "!=";
+        } else if (udf instanceof GenericUDFOPLessThan) {
+            return "<";
+        } else if (udf instanceof GenericUDFOPEqualOrLessThan) {
+            return "<=";
+        } else if (udf instanceof GenericUDFOPGreaterThan) {
+            return ">";
+        } else if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+            return ">=";
+        }
+
+        return null;
+    }
+
+    private static String flipOperator(String operator) {
+        if (operator.startsWith("<")) {
+            return ">" + operator.substring(1);
+        } else if (operator.startsWith(">")) {
+            return "<" + operator.substring(1);
+        }
+
+        return operator;
+    }
+
+    /**
+     * Returns the documentdb literal of a constant compared to a column, or null if documentdb wouldn't compare the
+     * values the way Hive does even when the stored values have the column type. Float columns aren't pushed down,
+     * since Hive compares them with the precision of a float.
+     */
+    private static String toLiteral(TypeInfo columnType, Object value) {
+        if (value == null || !(columnType instanceof PrimitiveTypeInfo)) {
+            return null;
+        }
+
+        switch (((PrimitiveTypeInfo) columnType).getPrimitiveCategory()) {
+        case STRING:
+            return value instanceof String ? QueryUtil.toStringLiteral((String) value) : null;
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case DOUBLE:
+            return value instanceof Number ? QueryUtil.toNumberLiteral(((Number) value).doubleValue()) : null;
+        case BOOLEAN:
+            return value instanceof Boolean ? value.toString() : null;
+        default:
+            return null;
+        }
+    }
+
+    private static String getPropertyName(Configuration conf, String column) {
+        String property = conf != null ? conf.get(MAPPING_PREFIX + column) : null;
+        return StringUtils.isEmpty(property) ? column : property;
+    }
+}
@@ -0,0 +1,178 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.UnionObjectInspector;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * Converts Hive rows to documents in a single walk of their ObjectInspectors, without going through JSON text. The
+ * columns are written to the properties mapped to them with 'mapping.<column>' = '<property>', or to the properties
+ * with the column names. Null values are left out of objects and maps. Decimals are written as numbers, and dates,
+ * timestamps and binaries as strings.
+ */
+public class DocumentDBRowSerializer {
+    private final List<String> columnNames;
+    private final Map<String, String> mappings;
+    private String[] propertyNames;
+    private StructObjectInspector propertyNamesInspector;
+
+    /**
+     * @param columnNames the column names of the table, which Hive doesn't pass in the ObjectInspector of the rows.
+     * @param mappings the document property names of the columns and struct fields, by name.
+     */
+    public DocumentDBRowSerializer(List<String> columnNames, Map<String, String> mappings) {
+        this.columnNames = columnNames;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Converts a row to a document.
+     * @param row the row.
+     * @param inspector the ObjectInspector of the row.
+     * @return the document.
+     */
+    public Document serialize(Object row, ObjectInspector inspector) throws SerDeException {
+        if (inspector.getCategory() != ObjectInspector.Category.STRUCT) {
+            throw new SerDeException(String.format("Rows of type %s can't be written to documents.",
+                    inspector.getTypeName()));
+        }
+
+        StructObjectInspector structInspector = (StructObjectInspector) inspector;
+        List<? extends StructField> fields = structInspector.getAllStructFieldRefs();
+        String[] propertyNames = this.getPropertyNames(structInspector, fields);
+        Document doc = new Document();
+        for (int i = 0; i < fields.size(); i++) {
+            StructField field = fields.get(i);
+            Object value = this.toJsonValue(structInspector.getStructFieldData(row, field),
+                    field.getFieldObjectInspector());
+            if (value != null) {
+                doc.set(propertyNames[i], value);
+            }
+        }
+
+        return doc;
+    }
+
+    /**
+     * Gets the property names of the columns, resolved once for the ObjectInspector of the rows.
+     */
+    private String[] getPropertyNames(StructObjectInspector inspector, List<? extends StructField> fields) {
+        if (inspector != this.propertyNamesInspector) {
+            this.propertyNames = new String[fields.size()];
+            boolean byPosition = this.columnNames != null && this.columnNames.size() == fields.size();
+            for (int i = 0; i < fields.size(); i++) {
+                this.propertyNames[i] = this.getPropertyName(
+                        byPosition ? this.columnNames.get(i) : fields.get(i).getFieldName());
+            }
+
+            this.propertyNamesInspector = inspector;
+        }
+
+        return this.propertyNames;
+    }
+
+    private String getPropertyName(String fieldName) {
+        String property = this.mappings.get(fieldName.toLowerCase());
+        return property != null ? property : fieldName;
+    }
+
+    /**
+     * Converts a Hive value to a document value.
+     * @return the JSONObject, JSONArray, Boolean, Number or String value, or null if the value is null.
+     */
+    private Object toJsonValue(Object data, ObjectInspector inspector) {
+        if (data == null) {
+            return null;
+        }
+
+        switch (inspector.getCategory()) {
+        case PRIMITIVE:
+            return toJsonPrimitive(data, (PrimitiveObjectInspector) inspector);
+        case STRUCT:
+            StructObjectInspector structInspector = (StructObjectInspector) inspector;
+            JSONObject object = new JSONObject();
+            for (StructField field : structInspector.getAllStructFieldRefs()) {
+                Object value = this.toJsonValue(structInspector.getStructFieldData(data, field),
+                        field.getFieldObjectInspector());
+                if (value != null) {
+                    object.put(this.getPropertyName(field.getFieldName()), value);
+                }
+            }
+
+            return object;
+        case LIST:
+            ListObjectInspector listInspector = (ListObjectInspector) inspector;
+            ObjectInspector elementInspector = listInspector.getListElementObjectInspector();
+            int length = listInspector.getListLength(data);
+            JSONArray array = new JSONArray();
+            for (int i = 0; i < length; i++) {
+                Object value = this.toJsonValue(listInspector.getListElement(data, i), elementInspector);
+                array.put(value != null ? value : JSONObject.NULL);
+            }
+
+            return array;
+        case MAP:
+            MapObjectInspector mapInspector = (MapObjectInspector) inspector;
+            JSONObject map = new JSONObject();
+            for (Map.Entry<?, ?> entry : mapInspector.getMap(data).entrySet()) {
+                Object key = this.toJsonValue(entry.getKey(), mapInspector.getMapKeyObjectInspector());
+                Object value = this.toJsonValue(entry.getValue(), mapInspector.getMapValueObjectInspector());
+                if (key != null && value != null) {
+                    map.put(key.toString(), value);
+                }
+            }
+
+            return map;
+        case UNION:
+            UnionObjectInspector unionInspector = (UnionObjectInspector) inspector;
+            return this.toJsonValue(unionInspector.getField(data),
+                    unionInspector.getObjectInspectors().get(unionInspector.getTag(data)));
+        default:
+            return null;
+        }
+    }
+
+    private static Object toJsonPrimitive(Object data, PrimitiveObjectInspector inspector) {
+        Object value = inspector.getPrimitiveJavaObject(data);
+        if (value == null) {
+            return null;
+        }
+
+        switch (inspector.getPrimitiveCategory()) {
+        case BOOLEAN:
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            return value;
+        case DECIMAL:
+            return ((HiveDecimal) value).bigDecimalValue();
+        case BINARY:
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        case VOID:
+            return null;
+        default:
+            return value.toString();
+        }
+    }
+}
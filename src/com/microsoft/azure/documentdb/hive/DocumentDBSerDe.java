@@ -4,35 +4,41 @@
 
 package com.microsoft.azure.documentdb.hive;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeStats;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.Writable;
-import org.openx.data.jsonserde.JsonSerDe;
-import org.openx.data.jsonserde.json.JSONObject;
 
-import com.microsoft.azure.documentdb.Document;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBConnectorUtil;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
 
 /**
  * 
- * A wrapper for openx JsonSerde to work with DocumentDBWritable. 
+ * Reads Hive rows from the documents of DocumentDBWritables with DocumentDBStructObjectInspector, which converts the
+ * properties of the read columns only, and writes Hive rows to documents with DocumentDBRowSerializer.
  *
  */
 public class DocumentDBSerDe implements SerDe {
     private static final String HIVE_USERAGENT = " HiveConnector/1.0.0";
     private DocumentDBWritable cachedWritable;
-    private JsonSerDe jsonSerde;
+    private ObjectInspector rowInspector;
+    private DocumentDBRowSerializer rowSerializer;
+    private final SerDeStats stats = new SerDeStats();
 
     public DocumentDBSerDe() {
         this.cachedWritable = new DocumentDBWritable();
-        this.jsonSerde = new JsonSerDe();
         
         // Set the user-agent to hive.
         if (!DocumentDBConnectorUtil.UserAgentSuffix.contains(DocumentDBSerDe.HIVE_USERAGENT)) {
@@ -41,25 +47,24 @@ public class DocumentDBSerDe implements SerDe {
     }
 
     /**
-     * Returns a JSONObject instance by deserializing a DocumentDBWritable.
+     * Returns the Document of a DocumentDBWritable as the row, without converting its properties.
      */
     public Object deserialize(Writable writable) throws SerDeException {
-        Text txtWritable = new Text(writable.toString());
-        return (JSONObject) this.jsonSerde.deserialize(txtWritable);
+        return ((DocumentDBWritable) writable).getDoc();
     }
 
     /**
-     * Returns JsonSerde object inspector.
+     * Returns the object inspector reading the rows from documents.
      */
     public ObjectInspector getObjectInspector() throws SerDeException {
-        return this.jsonSerde.getObjectInspector();
+        return this.rowInspector;
     }
 
     /**
-     * Returns JsonSerde stats.
+     * Returns the SerDe stats, which are not collected.
      */
     public SerDeStats getSerDeStats() {
-        return this.jsonSerde.getSerDeStats();
+        return this.stats;
     }
 
     /**
@@ -70,19 +75,40 @@ public class DocumentDBSerDe implements SerDe {
     }
     
     /**
-     * Calls JsonSerde.initialize
+     * Creates the row object inspector and the row serializer from the columns of the table and their mappings.
      */
     public void initialize(Configuration conf, Properties properties) throws SerDeException {
-        this.jsonSerde.initialize(conf, properties);
+        String columnNames = properties.getProperty(serdeConstants.LIST_COLUMNS);
+        String columnTypes = properties.getProperty(serdeConstants.LIST_COLUMN_TYPES);
+        if (columnNames == null || columnTypes == null) {
+            throw new SerDeException("The columns of the table and their types are required.");
+        }
+
+        List<String> names = Arrays.asList(columnNames.split(","));
+        List<TypeInfo> types = TypeInfoUtils.getTypeInfosFromTypeString(columnTypes);
+        Map<String, String> mappings = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(DocumentDBQueryPushdown.MAPPING_PREFIX)) {
+                mappings.put(key.substring(DocumentDBQueryPushdown.MAPPING_PREFIX.length()).toLowerCase(),
+                        properties.getProperty(key));
+            }
+        }
+
+        try {
+            this.rowInspector = DocumentDBObjectInspectorFactory.create(
+                    TypeInfoFactory.getStructTypeInfo(names, types), mappings);
+        } catch (IllegalArgumentException e) {
+            throw new SerDeException(e);
+        }
+
+        this.rowSerializer = new DocumentDBRowSerializer(names, mappings);
     }
 
     /**
-     * Serializes a JsonObject to a DocumentDWritable.
+     * Serializes a row to a DocumentDBWritable, which is reused from one row to the next.
      */
     public Writable serialize(Object obj, ObjectInspector objInspector) throws SerDeException {
-        Text txtWritable = (Text) this.jsonSerde.serialize(obj, objInspector);
-        Document doc = new Document(txtWritable.toString());
-        this.cachedWritable.setDoc(doc);
+        this.cachedWritable.setDoc(this.rowSerializer.serialize(obj, objInspector));
         return this.cachedWritable;
     }
 }
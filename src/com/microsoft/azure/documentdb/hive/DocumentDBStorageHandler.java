@@ -12,21 +12,24 @@ import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.hive.metastore.HiveMetaHook;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.HiveStorageHandler;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.security.authorization.HiveAuthorizationProvider;
+import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.JobConf;
 
 import com.microsoft.azure.documentdb.hadoop.ConfigurationUtil;
-import com.microsoft.azure.documentdb.mapred.hadoop.DocumentDBInputFormat;
 import com.microsoft.azure.documentdb.mapred.hadoop.DocumentDBOutputFormat;
 
 /**
  * This defines DocumentDB Hive storages handles which returns the InputFormat, OutputFormat, Serde ..etc.
  */
-public class DocumentDBStorageHandler extends Configured implements HiveStorageHandler {
+public class DocumentDBStorageHandler extends Configured implements HiveStorageHandler, HiveStoragePredicateHandler {
     public DocumentDBStorageHandler() {
         super();
     }
@@ -40,10 +43,10 @@ public class DocumentDBStorageHandler extends Configured implements HiveStorageH
     }
 
     /**
-     * Returns the DocumentDBInputFormat class.
+     * Returns the DocumentDBHiveInputFormat class.
      */
     public Class<? extends InputFormat> getInputFormatClass() {
-        return DocumentDBInputFormat.class;
+        return DocumentDBHiveInputFormat.class;
     }
 
     /**
@@ -108,6 +111,22 @@ public class DocumentDBStorageHandler extends Configured implements HiveStorageH
         return null;
     }
 
+    /**
+     * Pushes the predicate down to the input format when some of its comparisons can be translated to documentdb
+     * conditions. The whole predicate stays residual, since Hive and documentdb don't compare all values alike.
+     */
+    @Override
+    public DecomposedPredicate decomposePredicate(JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
+        if (!DocumentDBQueryPushdown.isPushable(predicate)) {
+            return null;
+        }
+
+        DecomposedPredicate decomposedPredicate = new DecomposedPredicate();
+        decomposedPredicate.pushedPredicate = (ExprNodeGenericFuncDesc) predicate;
+        decomposedPredicate.residualPredicate = (ExprNodeGenericFuncDesc) predicate;
+        return decomposedPredicate;
+    }
+
     /**
      * Returns the DocumentDBSerde class.
      */
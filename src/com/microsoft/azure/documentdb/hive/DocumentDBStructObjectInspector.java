@@ -0,0 +1,168 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+
+package com.microsoft.azure.documentdb.hive;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.json.JSONObject;
+
+import com.microsoft.azure.documentdb.Document;
+
+/**
+ * Reads a Hive struct, or a row, from a Document or a JSONObject. Each field is read from the property mapped to it
+ * with 'mapping.<field>' = '<property>', or from the property with the same name. Hive lowercases the names of the
+ * fields, so when no property has the exact name, the first property with the same name in another case is read.
+ * The name found that way is kept for the field, and the properties are only scanned again when a document doesn't
+ * have it.
+ */
+public class DocumentDBStructObjectInspector extends StructObjectInspector {
+    private final StructTypeInfo typeInfo;
+    private final List<DocumentDBStructField> fields;
+
+    public DocumentDBStructObjectInspector(StructTypeInfo typeInfo, List<ObjectInspector> fieldInspectors,
+            Map<String, String> mappings) {
+        this.typeInfo = typeInfo;
+        List<String> fieldNames = typeInfo.getAllStructFieldNames();
+        this.fields = new ArrayList<DocumentDBStructField>(fieldNames.size());
+        for (int i = 0; i < fieldNames.size(); i++) {
+            String property = mappings.get(fieldNames.get(i));
+            this.fields.add(new DocumentDBStructField(fieldNames.get(i), property != null ? property
+                    : fieldNames.get(i), fieldInspectors.get(i)));
+        }
+    }
+
+    public Category getCategory() {
+        return Category.STRUCT;
+    }
+
+    public String getTypeName() {
+        return this.typeInfo.getTypeName();
+    }
+
+    @Override
+    public List<? extends StructField> getAllStructFieldRefs() {
+        return this.fields;
+    }
+
+    @Override
+    public StructField getStructFieldRef(String fieldName) {
+        for (DocumentDBStructField field : this.fields) {
+            if (field.getFieldName().equalsIgnoreCase(fieldName)) {
+                return field;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("The struct %s has no field %s.", this.getTypeName(),
+                fieldName));
+    }
+
+    @Override
+    public Object getStructFieldData(Object data, StructField fieldRef) {
+        if (data == null) {
+            return null;
+        }
+
+        DocumentDBStructField field = (DocumentDBStructField) fieldRef;
+        return DocumentDBObjectInspectorFactory.toHiveValue(getProperty(data, field),
+                field.getFieldObjectInspector());
+    }
+
+    @Override
+    public List<Object> getStructFieldsDataAsList(Object data) {
+        if (data == null) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<Object>(this.fields.size());
+        for (DocumentDBStructField field : this.fields) {
+            values.add(this.getStructFieldData(data, field));
+        }
+
+        return values;
+    }
+
+    /**
+     * Gets the property of a field from a Document or a JSONObject, matching its name exactly, or else with the name
+     * last found for the field, or else in any case.
+     */
+    private static Object getProperty(Object data, DocumentDBStructField field) {
+        String resolvedProperty = field.resolvedProperty;
+        if (data instanceof Document) {
+            Document doc = (Document) data;
+            if (doc.has(field.property)) {
+                return doc.get(field.property);
+            }
+
+            if (!resolvedProperty.equals(field.property) && doc.has(resolvedProperty)) {
+                return doc.get(resolvedProperty);
+            }
+
+            for (String key : doc.getHashMap().keySet()) {
+                if (key.equalsIgnoreCase(field.property)) {
+                    field.resolvedProperty = key;
+                    return doc.get(key);
+                }
+            }
+        } else if (data instanceof JSONObject) {
+            JSONObject object = (JSONObject) data;
+            Object value = object.opt(field.property);
+            if (value == null && !resolvedProperty.equals(field.property)) {
+                value = object.opt(resolvedProperty);
+            }
+
+            if (value != null) {
+                return value;
+            }
+
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (key.equalsIgnoreCase(field.property)) {
+                    field.resolvedProperty = key;
+                    return object.opt(key);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A field of the struct, the document property it is read from and the actual name of that property in the last
+     * document read in another case.
+     */
+    private static class DocumentDBStructField implements StructField {
+        private final String name;
+        private final String property;
+        private final ObjectInspector inspector;
+        private volatile String resolvedProperty;
+
+        public DocumentDBStructField(String name, String property, ObjectInspector inspector) {
+            this.name = name;
+            this.property = property;
+            this.inspector = inspector;
+            this.resolvedProperty = property;
+        }
+
+        public String getFieldName() {
+            return this.name;
+        }
+
+        public ObjectInspector getFieldObjectInspector() {
+            return this.inspector;
+        }
+
+        public String getFieldComment() {
+            return null;
+        }
+    }
+}
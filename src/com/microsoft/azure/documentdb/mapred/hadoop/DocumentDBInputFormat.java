@@ -34,7 +34,7 @@ public class DocumentDBInputFormat implements InputFormat<LongWritable, Document
     public RecordReader<LongWritable, DocumentDBWritable> getRecordReader(InputSplit split, JobConf conf,
             Reporter reporter) throws IOException {
 
-        return new DocumentDBRecordReader((WrapperSplit) split);
+        return new DocumentDBRecordReader((WrapperSplit) split, conf);
     }
 
     /**
@@ -0,0 +1,57 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.mapred.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.JobContext;
+import org.apache.hadoop.mapred.JobStatus;
+import org.apache.hadoop.mapred.OutputCommitter;
+import org.apache.hadoop.mapred.TaskAttemptContext;
+
+/**
+ * Commits the output of the jobs writing to documentdb with the mapred API, set by DocumentDBOutputFormat when the
+ * job doesn't set a committer. Delegates to the committer of the mapreduce API.
+ */
+public class DocumentDBOutputCommitter extends OutputCommitter {
+    private final com.microsoft.azure.documentdb.hadoop.DocumentDBOutputCommitter committer =
+            new com.microsoft.azure.documentdb.hadoop.DocumentDBOutputCommitter();
+
+    @Override
+    public void setupJob(JobContext jobContext) throws IOException {
+        this.committer.setupJob(jobContext);
+    }
+
+    @Override
+    public void commitJob(JobContext jobContext) throws IOException {
+        this.committer.commitJob(jobContext);
+    }
+
+    @Override
+    public void abortJob(JobContext jobContext, int status) throws IOException {
+        this.committer.abortJob(jobContext, status == JobStatus.KILLED
+                ? org.apache.hadoop.mapreduce.JobStatus.State.KILLED
+                : org.apache.hadoop.mapreduce.JobStatus.State.FAILED);
+    }
+
+    @Override
+    public void setupTask(TaskAttemptContext taskContext) throws IOException {
+        this.committer.setupTask(taskContext);
+    }
+
+    @Override
+    public boolean needsTaskCommit(TaskAttemptContext taskContext) throws IOException {
+        return this.committer.needsTaskCommit(taskContext);
+    }
+
+    @Override
+    public void commitTask(TaskAttemptContext taskContext) throws IOException {
+        this.committer.commitTask(taskContext);
+    }
+
+    @Override
+    public void abortTask(TaskAttemptContext taskContext) throws IOException {
+        this.committer.abortTask(taskContext);
+    }
+}
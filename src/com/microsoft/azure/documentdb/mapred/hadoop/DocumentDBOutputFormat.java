@@ -13,6 +13,7 @@ import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.util.Progressable;
 
 import com.microsoft.azure.documentdb.hadoop.ConfigurationUtil;
+import com.microsoft.azure.documentdb.hadoop.DocumentDBConnectorUtil;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
 
 /**
@@ -21,7 +22,9 @@ import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
 public class DocumentDBOutputFormat implements OutputFormat<Writable, DocumentDBWritable> {
 
     /**
-     * Validates the required properties needed to write to documentdb.
+     * Validates the required properties needed to write to documentdb, and provisions the output collections once
+     * for all the record writers of the job. Also sets the committer of the job to DocumentDBOutputCommitter when
+     * the job doesn't set one, since the mapred API takes the committer from the job rather than the output format.
      */
     public void checkOutputSpecs(FileSystem fs, JobConf conf) throws IOException {
         final String endpoint = ConfigurationUtil.getDBEndpoint(conf);
@@ -37,6 +40,11 @@ public class DocumentDBOutputFormat implements OutputFormat<Writable, DocumentDB
             throw new IOException("DB_NAME must be set for the jobconf");
         if (collectionNames == null || collectionNames.length == 0)
             throw new IOException("OUTPUT_COLLECTION_NAME must be set for the jobconf as comma separated names");
+
+        DocumentDBConnectorUtil.provisionOutputCollections(conf);
+        if (conf.get(ConfigurationUtil.MAPRED_OUTPUT_COMMITTER_CLASS) == null) {
+            conf.setOutputCommitter(DocumentDBOutputCommitter.class);
+        }
     }
 
     /**
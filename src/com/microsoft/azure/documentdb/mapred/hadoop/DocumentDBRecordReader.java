@@ -4,15 +4,14 @@
 package com.microsoft.azure.documentdb.mapred.hadoop;
 
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapred.RecordReader;
-import com.microsoft.azure.documentdb.Document;
 import com.microsoft.azure.documentdb.hadoop.BackoffExponentialRetryPolicy;
-import com.microsoft.azure.documentdb.hadoop.DocumentDBConnectorUtil;
+import com.microsoft.azure.documentdb.hadoop.DocumentDBDocumentIterator;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
 
 /**
@@ -22,7 +21,8 @@ public class DocumentDBRecordReader implements RecordReader<LongWritable, Docume
 
     private long pos;
     private long documentsProcessed;
-    private Iterator<Document> documentIterator;
+    private boolean finished;
+    private DocumentDBDocumentIterator documentIterator;
     private WrapperSplit split;
     private static final Log LOG = LogFactory.getLog(DocumentDBWritable.class);
 
@@ -32,12 +32,19 @@ public class DocumentDBRecordReader implements RecordReader<LongWritable, Docume
     * from DocumentDB.
     */
     public DocumentDBRecordReader(WrapperSplit split) throws IOException {
+        this(split, null);
+    }
+
+    public DocumentDBRecordReader(WrapperSplit split, Configuration conf) throws IOException {
         this.split = split;
-        this.documentIterator = this.split.getWrappedSplit().getDocumentIterator();
+        this.documentIterator = this.split.getWrappedSplit().getDocumentIterator(conf);
+        this.documentsProcessed = this.documentIterator.getResumedDocumentCount();
     }
 
     public void close() throws IOException {
-
+        if (this.documentIterator != null) {
+            this.documentIterator.close();
+        }
     }
 
     /**
@@ -62,23 +69,11 @@ public class DocumentDBRecordReader implements RecordReader<LongWritable, Docume
     }
 
     /**
-     * {@inheritDoc}
+     * Returns the progress from the number of documents read and the split's estimated document count.
      */
     public float getProgress() throws IOException {
-        if (this.documentIterator == null) return 0f;
-        BackoffExponentialRetryPolicy policy = new BackoffExponentialRetryPolicy();
-        boolean hasNext = false;
-        while(policy.shouldRetry()) {
-            try {
-                hasNext = this.documentIterator.hasNext();
-                break;
-            }
-            catch(Exception e) {
-                policy.errorOccured(e);
-            }
-        }
-        
-        return hasNext ? 0f : 1f;
+        if (this.finished) return 1f;
+        return this.split.getWrappedSplit().getProgress(this.documentsProcessed);
     }
 
     /**
@@ -91,6 +86,7 @@ public class DocumentDBRecordReader implements RecordReader<LongWritable, Docume
                 if (this.documentIterator == null || !this.documentIterator.hasNext()) {
                     LOG.info(String.format("processed %d documents of collection %s", this.documentsProcessed, this.split
                             .getWrappedSplit().getCollectionName()));
+                    this.finished = true;
                     return false;
                 }
         
@@ -39,7 +39,7 @@ public class WrapperSplit extends FileSplit implements Writable {
      *            The configuration.
      */
     public WrapperSplit(DocumentDBInputSplit wrappedSplit, Path file, JobConf conf) {
-        super(file, 0, 0, conf);
+        super(file, 0, wrappedSplit.getLength(), conf);
         this.wrappedSplit = wrappedSplit;
     }
 
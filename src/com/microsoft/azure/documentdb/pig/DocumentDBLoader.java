@@ -7,8 +7,11 @@ package com.microsoft.azure.documentdb.pig;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,25 +22,36 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.Expression;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.LoadPushDown;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigInputFormat;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.json.JSONArray;
 
 import com.microsoft.azure.documentdb.Document;
 import com.microsoft.azure.documentdb.hadoop.ConfigurationUtil;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBConnectorUtil;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBInputFormat;
 import com.microsoft.azure.documentdb.hadoop.DocumentDBWritable;
+import com.microsoft.azure.documentdb.hadoop.QueryUtil;
 
 /**
- * A Pig data loader from DocumentDB.
+ * A Pig data loader from DocumentDB. Without a schema, each document is loaded as a tuple with one map. With a
+ * schema, each field of the schema is loaded from the document property of the same name.
+ * Only the fields, or the map keys, used by the script are selected by the DocumentDB query.
  */
-public class DocumentDBLoader extends LoadFunc{
+public class DocumentDBLoader extends LoadFunc implements LoadMetadata, LoadPushDown {
     private static final String PIG_LOADER_USERAGENT = " PigConnectorLoader/1.0.0";
     private String masterkey = null;
     private RecordReader reader = null;
@@ -46,20 +60,40 @@ public class DocumentDBLoader extends LoadFunc{
     private String dbName;
     private String inputCollections;
     private String query;
+    private String udfContextSignature = null;
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
     Log log = LogFactory.getLog(DocumentDBLoader.class);
 
+    // Pig specific settings
+    static final String PIG_REQUIRED_PROPERTIES_UDF_CONTEXT = "documentdb.pig.required.properties.udf_context";
+
     public DocumentDBLoader(String masterkey, String dbName, String inputCollections){
         this(masterkey, dbName, inputCollections, null);
     }
     
     public DocumentDBLoader(String masterkey, String dbName, String inputCollections, String query) {
+        this(masterkey, dbName, inputCollections, query, null);
+    }
+
+    /**
+     * Creates a loader with a schema, e.g. "id:chararray, name:chararray, age:int".
+     */
+    public DocumentDBLoader(String masterkey, String dbName, String inputCollections, String query, String schema) {
         this.masterkey = masterkey;
         this.fields = null;
         this.dbName = dbName;
         // Comma separated collection names
         this.inputCollections = inputCollections; 
         this.query = query;
+        if (schema != null) {
+            try {
+                this.schema = new ResourceSchema(SchemaHelper.getSchemaFromString(schema));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid schema: " + schema, e);
+            }
+
+            this.fields = this.schema.getFields();
+        }
         
         //Set the userAgent to pig loader
         if (!DocumentDBConnectorUtil.UserAgentSuffix.contains(DocumentDBLoader.PIG_LOADER_USERAGENT)) {
@@ -89,13 +123,12 @@ public class DocumentDBLoader extends LoadFunc{
             t = tupleFactory.newTuple(1);
             t.set(0, convertToPigType(properties));
         } else {
-            // TODO: when scheme is specified.
+            HashMap<String, Object> properties = doc.getHashMap();
             t = tupleFactory.newTuple(this.fields.length);
             for (int i = 0; i < this.fields.length; i++) {
-                String fieldTemp = this.fields[i].getName();
-                t.set(i, convertToPigType(doc.getObject(fieldTemp)));
+                ResourceFieldSchema field = this.fields[i];
+                t.set(i, convertToSchemaType(convertToPigType(properties.get(field.getName())), field.getType()));
             }
-               
         }
         
         return t;
@@ -128,6 +161,33 @@ public class DocumentDBLoader extends LoadFunc{
         }
     }
     
+    /**
+     * Converts a JSON value to the type of its field in the schema, values that can't be converted are loaded as is.
+     */
+    private Object convertToSchemaType(Object o, byte type) {
+        if (o instanceof Number) {
+            Number number = (Number) o;
+            switch (type) {
+            case DataType.INTEGER:
+                return number.intValue();
+            case DataType.LONG:
+                return number.longValue();
+            case DataType.FLOAT:
+                return number.floatValue();
+            case DataType.DOUBLE:
+                return number.doubleValue();
+            case DataType.CHARARRAY:
+                return number.toString();
+            default:
+                return o;
+            }
+        } else if (o instanceof Boolean && type == DataType.CHARARRAY) {
+            return o.toString();
+        }
+
+        return o;
+    }
+
     /**
      * Converts a DocumentDBWritable to a pig Tuple.
      */
@@ -160,6 +220,19 @@ public class DocumentDBLoader extends LoadFunc{
     public void prepareToRead(RecordReader reader, PigSplit split)
             throws IOException {
         this.reader = reader;
+
+        // Only the required fields are loaded after a projection was pushed down.
+        List<String> requiredProperties = this.getRequiredProperties();
+        if (this.schema != null && requiredProperties != null) {
+            List<ResourceFieldSchema> requiredFields = new ArrayList<ResourceFieldSchema>();
+            for (ResourceFieldSchema field : this.schema.getFields()) {
+                if (requiredProperties.contains(field.getName())) {
+                    requiredFields.add(field);
+                }
+            }
+
+            this.fields = requiredFields.toArray(new ResourceFieldSchema[0]);
+        }
     }
 
     /**
@@ -173,7 +246,10 @@ public class DocumentDBLoader extends LoadFunc{
         conf.set(ConfigurationUtil.DB_KEY, this.masterkey);
         conf.set(ConfigurationUtil.DB_NAME, this.dbName);
         conf.set(ConfigurationUtil.INPUT_COLLECTION_NAMES, this.inputCollections);
-        if (this.query != null) {
+        List<String> requiredProperties = this.getRequiredProperties();
+        if (requiredProperties != null) {
+            conf.set(ConfigurationUtil.QUERY, QueryUtil.project(this.query, requiredProperties));
+        } else if (this.query != null) {
             conf.set(ConfigurationUtil.QUERY, this.query);
         }
         
@@ -193,7 +269,93 @@ public class DocumentDBLoader extends LoadFunc{
      */
     @Override
     public void setUDFContextSignature(String signature) {
-        
+        this.udfContextSignature = signature;
+    }
+
+    /**
+     * Returns the schema of the loader, or null when documents are loaded as maps.
+     */
+    public ResourceSchema getSchema(String location, Job job) throws IOException {
+        return this.schema;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResourceStatistics getStatistics(String location, Job job) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getPartitionKeys(String location, Job job) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setPartitionFilter(Expression partitionFilter) throws IOException {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<OperatorSet> getFeatures() {
+        return Arrays.asList(LoadPushDown.OperatorSet.PROJECTION);
+    }
+
+    /**
+     * Saves the document properties used by the script in the UDF context. With a schema these are the required
+     * fields, without a schema these are the keys looked up in the document map.
+     */
+    public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList) throws FrontendException {
+        List<RequiredField> requiredFields = requiredFieldList.getFields();
+        if (requiredFields == null || requiredFields.isEmpty()) {
+            return new RequiredFieldResponse(false);
+        }
+
+        List<String> requiredProperties = new ArrayList<String>();
+        if (this.schema != null) {
+            for (RequiredField requiredField : requiredFields) {
+                requiredProperties.add(this.schema.getFields()[requiredField.getIndex()].getName());
+            }
+        } else {
+            RequiredField document = requiredFields.get(0);
+            if (requiredFields.size() != 1 || document.getIndex() != 0 || document.getSubFields() == null) {
+                return new RequiredFieldResponse(false);
+            }
+
+            for (RequiredField key : document.getSubFields()) {
+                requiredProperties.add(key.getAlias());
+            }
+        }
+
+        Properties properties =
+                UDFContext.getUDFContext().getUDFProperties(this.getClass(), new String[]{udfContextSignature});
+        properties.setProperty(PIG_REQUIRED_PROPERTIES_UDF_CONTEXT, new JSONArray(requiredProperties).toString());
+        return new RequiredFieldResponse(true);
+    }
+
+    /**
+     * Returns the document properties saved by pushProjection, or null if no projection was pushed down.
+     */
+    private List<String> getRequiredProperties() {
+        Properties properties =
+                UDFContext.getUDFContext().getUDFProperties(this.getClass(), new String[]{udfContextSignature});
+        String value = properties.getProperty(PIG_REQUIRED_PROPERTIES_UDF_CONTEXT);
+        if (value == null) {
+            return null;
+        }
+
+        JSONArray array = new JSONArray(value);
+        List<String> requiredProperties = new ArrayList<String>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            requiredProperties.add(array.getString(i));
+        }
+
+        return requiredProperties;
     }
 
 }
@@ -0,0 +1,111 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Checks that documents round trip through DocumentDBBinaryEncoding, and that the values of key paths are found in the
+ * encoded documents.
+ */
+public class DocumentDBBinaryEncodingTest {
+
+    @Test
+    public void testEscapes() throws IOException {
+        assertRoundTrip("{\"s\":\"quote \\\" backslash \\\\ slash / \\b\\f\\n\\r\\t \\u0001 \\u001f\"}");
+        assertRoundTrip("{\"na\\\"me\\n\":\"\"}");
+    }
+
+    @Test
+    public void testUnescapedInput() throws IOException {
+        assertEquals("{\"s\":\"/ \\u0001 A\"}", roundTrip("{\"s\":\"\\/ \\u0001 \\u0041\"}"));
+        assertEquals("{\"a\":[1,{\"b\":true}],\"c\":null}",
+                roundTrip(" { \"a\" : [ 1 , { \"b\" : true } ] ,\n\"c\":null } "));
+    }
+
+    @Test
+    public void testNonAsciiAndSurrogates() throws IOException {
+        assertRoundTrip("{\"\u00e9t\u00e9\":\"\u00e9\u4e2d\u6587\uffff\"}");
+        assertRoundTrip("{\"emoji\":\"\ud83d\ude00\",\"high\":\"\ud83d\",\"low\":\"\ude00x\"}");
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        assertRoundTrip("{\"a\":0,\"b\":-1,\"c\":123456789012345678,\"d\":-123456789012345678}");
+        assertRoundTrip("{\"max\":9223372036854775807,\"min\":-9223372036854775808,\"big\":123456789012345678901234}");
+        assertRoundTrip("{\"zero\":-0,\"float\":0.0,\"negative\":-0.5}");
+        assertRoundTrip("{\"a\":1e10,\"b\":1E-7,\"c\":-2.5e+300,\"d\":6.02E23}");
+    }
+
+    @Test
+    public void testNestedNameReferences() throws IOException {
+        String json = "{\"a\":{\"a\":1,\"b\":[{\"b\":2,\"a\":3},{\"c\":4}]},\"b\":{\"c\":{\"a\":5}},\"c\":6,\"a2\":[]}";
+        assertRoundTrip(json);
+
+        byte[] data = encode(json);
+        assertEquals(1, find(data, "a.a"));
+        assertEquals(5, find(data, "b.c.a"));
+        assertEquals(6, find(data, "c"));
+        assertEquals(null, find(data, "a.c"));
+        assertEquals(null, find(data, "a.b.b"));
+        assertTrue(DocumentDBKeyPath.isContainer(data, new DocumentDBKeyPath("a.b").find(data, 0)));
+    }
+
+    @Test
+    public void testEmptyContainers() throws IOException {
+        assertRoundTrip("{}");
+        assertRoundTrip("{\"a\":{},\"b\":[],\"c\":[[],{}]}");
+    }
+
+    @Test
+    public void testLargeDocument() throws IOException {
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 70000) {
+            value.append("abc\u00e9\u4e2d\ud83d\ude00 ");
+        }
+
+        StringBuilder json = new StringBuilder("{\"large\":\"").append(value).append("\",\"items\":[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i > 0 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"item").append(i)
+                    .append("\"}");
+        }
+
+        json.append("],\"last\":true}");
+        assertTrue(json.length() > 64 * 1024);
+        assertRoundTrip(json.toString());
+
+        byte[] data = encode(json.toString());
+        assertEquals(value.toString(), find(data, "large"));
+        assertEquals(Boolean.TRUE, find(data, "last"));
+    }
+
+    private static void assertRoundTrip(String json) throws IOException {
+        assertEquals(json, roundTrip(json));
+    }
+
+    private static String roundTrip(String json) throws IOException {
+        StringBuilder out = new StringBuilder();
+        new DocumentDBBinaryEncoding().decode(new DataInputStream(new ByteArrayInputStream(encode(json))), out);
+        return out.toString();
+    }
+
+    private static byte[] encode(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DocumentDBBinaryEncoding().encode(json, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static Object find(byte[] data, String path) throws IOException {
+        return DocumentDBKeyPath.readScalar(data, new DocumentDBKeyPath(path).find(data, 0));
+    }
+}
@@ -0,0 +1,94 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Checks the order of the values compared by DocumentDBKeyPath.compareValues.
+ */
+public class DocumentDBKeyPathTest {
+
+    @Test
+    public void testTypeOrder() throws IOException {
+        assertOrdered("v", "{}", "{\"v\":null}", "{\"v\":false}", "{\"v\":true}", "{\"v\":-1e300}", "{\"v\":0}",
+                "{\"v\":\"\"}", "{\"v\":\"0\"}", "{\"v\":{}}", "{\"v\":[]}");
+    }
+
+    @Test
+    public void testNumberOrder() throws IOException {
+        assertOrdered("v", "{\"v\":-9223372036854775808}", "{\"v\":-123456789012345678}", "{\"v\":-2.5}",
+                "{\"v\":-2}", "{\"v\":1E-7}", "{\"v\":1}", "{\"v\":1.5}", "{\"v\":2}", "{\"v\":123456789012345678}",
+                "{\"v\":9223372036854775807}", "{\"v\":1e300}");
+        assertEquals(0, compare("v", "{\"v\":2}", "{\"v\":2.0}"));
+        assertEquals(0, compare("v", "{\"v\":100}", "{\"v\":1e2}"));
+    }
+
+    @Test
+    public void testStringOrder() throws IOException {
+        String[] values = { "", "A", "B", "a", "ab", "b", "\u00e9", "\u4e2d", "\ud83d\ude00", "\ue000", "\uffff" };
+        for (String value1 : values) {
+            for (String value2 : values) {
+                assertEquals(value1 + " " + value2, Integer.signum(value1.compareTo(value2)),
+                        Integer.signum(compare("v", toDocument(value1), toDocument(value2))));
+            }
+        }
+    }
+
+    @Test
+    public void testNestedPaths() throws IOException {
+        String first = "{\"customer\":{\"id\":\"a\",\"visits\":3},\"id\":2}";
+        String second = "{\"id\":1,\"customer\":{\"visits\":2,\"id\":\"a\"}}";
+        assertEquals(0, compare("customer.id", first, second));
+        assertEquals(1, compare("customer.visits", first, second));
+        assertEquals(1, compare("id", first, second));
+        assertEquals(-1, compare("customer.name", first, "{\"customer\":{\"name\":null}}"));
+        assertEquals(0, compare("customer.id.value", first, second));
+    }
+
+    @Test
+    public void testSharedKeyPath() throws IOException {
+        DocumentDBKeyPath keyPath = new DocumentDBKeyPath("b.a");
+        byte[] data1 = encode("{\"a\":1,\"b\":{\"a\":2}}");
+        byte[] data2 = encode("{\"b\":{\"c\":1,\"a\":3}}");
+        assertEquals(-1, DocumentDBKeyPath.compareValues(data1, keyPath.find(data1, 0), data2, keyPath.find(data2, 0)));
+        assertEquals(2, DocumentDBKeyPath.readScalar(data1, keyPath.find(data1, 0)));
+        assertEquals(3, DocumentDBKeyPath.readScalar(data2, keyPath.find(data2, 0)));
+    }
+
+    /**
+     * Checks that the documents are in ascending order of the value of the path, and that equal values compare equal.
+     */
+    private static void assertOrdered(String path, String... documents) throws IOException {
+        for (int i = 0; i < documents.length; i++) {
+            for (int j = 0; j < documents.length; j++) {
+                assertEquals(documents[i] + " " + documents[j], Integer.signum(Integer.compare(i, j)),
+                        Integer.signum(compare(path, documents[i], documents[j])));
+            }
+        }
+    }
+
+    private static int compare(String path, String json1, String json2) throws IOException {
+        DocumentDBKeyPath keyPath = new DocumentDBKeyPath(path);
+        byte[] data1 = encode(json1);
+        byte[] data2 = encode(json2);
+        return DocumentDBKeyPath.compareValues(data1, keyPath.find(data1, 0), data2, keyPath.find(data2, 0));
+    }
+
+    private static String toDocument(String value) {
+        return "{\"v\":\"" + value + "\"}";
+    }
+
+    private static byte[] encode(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DocumentDBBinaryEncoding().encode(json, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,115 @@
+//------------------------------------------------------------
+// Copyright (c) Microsoft Corporation.  All rights reserved.
+//------------------------------------------------------------
+package com.microsoft.azure.documentdb.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Checks that the batches spilled to a DocumentDBSpillQueue are drained in order with their batch keys.
+ */
+public class DocumentDBSpillQueueTest {
+
+    @Test
+    public void testSpillAndDrain() throws Exception {
+        DocumentDBSpillQueue queue = new DocumentDBSpillQueue(new File(System.getProperty("java.io.tmpdir")));
+        try {
+            List<String> first = Arrays.asList("{\"id\":\"1\",\"name\":\"\u00e9\"}", "{\"id\":\"2\"}");
+            List<String> second = new ArrayList<String>();
+            for (int i = 0; i < 1000; i++) {
+                second.add("{\"id\":\"" + i + "\"}");
+            }
+
+            assertTrue(queue.isEmpty());
+            queue.put(1, "key", first);
+            queue.put(0, DocumentDBBatchWriter.NO_PARTITION_KEY, second);
+            queue.put(2, 42L, first);
+            queue.put(0, DocumentDBBatchWriter.UNDEFINED_PARTITION_KEY, first);
+            assertFalse(queue.isEmpty());
+
+            DocumentDBSpillQueue.SpilledBatch batch = queue.peek();
+            assertSame(batch, queue.peek());
+            assertEquals(1, batch.index);
+            assertEquals("key", batch.batchKey);
+            assertEquals(first, batch.batch.getJsonDocuments());
+            assertEquals(2, batch.batch.getDocuments().size());
+            queue.remove();
+
+            batch = queue.peek();
+            assertEquals(0, batch.index);
+            assertSame(DocumentDBBatchWriter.NO_PARTITION_KEY, batch.batchKey);
+            assertEquals(second, batch.batch.getJsonDocuments());
+            queue.remove();
+
+            batch = queue.peek();
+            assertEquals(2, batch.index);
+            assertEquals(42L, batch.batchKey);
+            queue.remove();
+
+            batch = queue.peek();
+            assertSame(DocumentDBBatchWriter.UNDEFINED_PARTITION_KEY, batch.batchKey);
+            assertFalse(queue.isEmpty());
+            queue.remove();
+            assertTrue(queue.isEmpty());
+            assertTrue(queue.awaitEmpty(0));
+
+            queue.close();
+            assertNull(queue.peek());
+        } finally {
+            queue.delete();
+        }
+    }
+
+    @Test
+    public void testDrainerWaitsForBatches() throws Exception {
+        final DocumentDBSpillQueue queue = new DocumentDBSpillQueue(new File(System.getProperty("java.io.tmpdir")));
+        final List<Object> drained = new ArrayList<Object>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread drainer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    DocumentDBSpillQueue.SpilledBatch batch;
+                    while ((batch = queue.peek()) != null) {
+                        drained.add(batch.batchKey);
+                        queue.remove();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+
+        try {
+            drainer.start();
+            for (int i = 0; i < 100; i++) {
+                queue.put(0, i, Arrays.asList("{\"id\":\"" + i + "\"}"));
+            }
+
+            while (!queue.awaitEmpty(1000)) {
+                assertNull(failure.get());
+            }
+
+            queue.close();
+            drainer.join();
+            assertNull(failure.get());
+            assertEquals(100, drained.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, drained.get(i));
+            }
+        } finally {
+            queue.delete();
+        }
+    }
+}